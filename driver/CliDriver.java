@@ -1,6 +1,8 @@
 package driver;
 
 import util.CmdUtil;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 import graph.*;
 import planner.*;
 import robot.*;
@@ -20,8 +22,13 @@ public class CliDriver
         System.out.print("Enter graph class: ");
         String gtype = inbr.readLine();
 
-        System.out.print("Enter planner type (0 for Dijkstra): ");
-        String ptype = inbr.readLine();
+        System.out.print("Enter planner type (0 for Dijkstra, 1 for A*, 2 for A* with landmarks),"
+            + " optionally followed by a queue type ("
+            + QueueUtil.NAMES + "; A* only accepts " + QueueUtil.EXACT_NAMES + "): ");
+        String[] pwords = inbr.readLine().trim().split(" +");
+        String ptype = pwords[0];
+        IntPriorityQueue.Factory queueFactory = QueueUtil.getFactory(pwords.length > 1 ? pwords[1] : "heap",
+            !ptype.equals("0"));
 
         System.out.print("Enter start vertex (-1 for last vertex): ");
         int start_v = Integer.parseInt(inbr.readLine());
@@ -31,6 +38,8 @@ public class CliDriver
         AbstractGraph graph;
         if(gtype.equals("GenGraph"))
             graph = new GenGraph(fbr);
+        else if(gtype.equals("CsrGraph"))
+            graph = new GenGraph(fbr).toCsrGraph();
         else if(gtype.equals("GridGraph"))
             graph = new GridGraph(fbr);
         else
@@ -40,11 +49,22 @@ public class CliDriver
         if(goal_v == -1)
             goal_v = graph.size() - 1;
 
-        Robot robot = new GraphRobot(graph, start_v);
+        GraphRobot robot = new GraphRobot(graph, start_v);
 
         AbstractPlanner planner;
+        // the heuristic must bound distances in the graph the planner searches, i.e. the robot's copy
+        LandmarkHeuristic landmarks = null;
         if(ptype.equals("0"))
-            planner = new DijkstraPlanner(goal_v, robot);
+            planner = new DijkstraPlanner(goal_v, robot, new AbstractPlanner.Callback(),
+                queueFactory);
+        else if(ptype.equals("1"))
+            planner = new AStarPlanner(goal_v, robot, new AbstractPlanner.Callback(),
+                queueFactory);
+        else if(ptype.equals("2") && (robot.getGraph() instanceof GenGraph)) {
+            landmarks = new LandmarkHeuristic((GenGraph)robot.getGraph(), 16);
+            planner = new AStarPlanner(goal_v, robot, new AbstractPlanner.Callback(),
+                queueFactory, landmarks);
+        }
         else
             throw new RuntimeException("Invalid planner");
 
@@ -71,6 +91,12 @@ public class CliDriver
                     double w = Double.parseDouble(words[3]);
                     ((GenGraph)graph).update(u, v, w, true);
                 }
+                else if(words[0].equals("update") && (graph instanceof CsrGraph)) {
+                    int u = Integer.parseInt(words[1]);
+                    int v = Integer.parseInt(words[2]);
+                    double w = Double.parseDouble(words[3]);
+                    ((CsrGraph)graph).update(u, v, w, true);
+                }
                 else if(words[0].equals("update") && (graph instanceof GridGraph)) {
                     int i = Integer.parseInt(words[1]);
                     int j = Integer.parseInt(words[2]);
@@ -82,6 +108,11 @@ public class CliDriver
                     int v = Integer.parseInt(words[2]);
                     ((GenGraph)graph).breakEdge(u, v);
                 }
+                else if(words[0].equals("break") && (graph instanceof CsrGraph)) {
+                    int u = Integer.parseInt(words[1]);
+                    int v = Integer.parseInt(words[2]);
+                    ((CsrGraph)graph).breakEdge(u, v);
+                }
                 else {
                     System.out.println("Invalid command");
                 }
@@ -90,5 +121,8 @@ public class CliDriver
         System.out.println("Goal reached!");
         System.out.println("Distance travelled: " + planner.getDistance());
         System.out.println("Replanning time: " + total_replan_time);
+        if(landmarks != null)
+            landmarks.close();
+        robot.close();
     }
 }
@@ -14,6 +14,8 @@ import java.awt.GridLayout;
 import javax.swing.SwingUtilities;
 
 import util.GUIUtil;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 import graph.*;
 import planner.*;
 import gridpanel.GridPanel;
@@ -68,16 +70,33 @@ public abstract class GuiDriver
         return getGridPanelCell(u, false);
     }
 
-    private static AbstractPlanner getPlanner(String name, int start, int goal, GridGraph graph) {
+    private static AbstractPlanner getPlanner(String name, int start, int goal, GridGraph graph,
+            IntPriorityQueue.Factory queueFactory) {
         GridRobot robot = new GridGraphRobot(graph, start);
+        AbstractPlanner.Callback callback = new AbstractPlanner.Callback();
         if(name.equals("DijkstraPlanner")) {
-            return new DijkstraPlanner(goal, robot);
+            return new DijkstraPlanner(goal, robot, callback, queueFactory);
+        }
+        else if(name.equals("AStarPlanner")) {
+            return new AStarPlanner(goal, robot, callback, queueFactory);
+        }
+        else if(name.equals("JPSPlanner")) {
+            return new JPSPlanner(goal, robot, callback, queueFactory);
+        }
+        else if(name.equals("HPAPlanner")) {
+            return new HPAPlanner(goal, robot, callback, queueFactory);
         }
         else if(name.equals("DStarLitePlanner")) {
-            return new DStarLitePlanner(goal, robot);
+            return new DStarLitePlanner(goal, robot, callback, queueFactory);
+        }
+        else if(name.equals("ADStarPlanner")) {
+            return new ADStarPlanner(goal, robot, callback, queueFactory);
+        }
+        else if(name.equals("LSSLRTAPlanner")) {
+            return new LSSLRTAPlanner(goal, robot, callback, queueFactory);
         }
         else if(name.equals("TWDSLPlanner")) {
-            return new TWDSLPlanner(start, goal, robot);
+            return new TWDSLPlanner(start, goal, robot, callback, queueFactory);
         }
         else {
             throw new RuntimeException("Invalid Planner type");
@@ -96,7 +115,8 @@ public abstract class GuiDriver
         }
         if(curr != -1) {
             int goal = planner.getGoal();
-            while(curr != goal) {
+            // planners which search only part of the way return -1 where their path ends
+            while(curr != goal && curr != -1) {
                 gridPanel.setCell(curr, getGridPanelCell(curr, true));
                 curr = planner.getNext(curr);
             }
@@ -105,6 +125,12 @@ public abstract class GuiDriver
 
     public static void run(String fpath, String plannerType, final int callbackSleep,
         int sensorRadius) throws IOException, GridGraph.CreateException
+    {
+        run(fpath, plannerType, callbackSleep, sensorRadius, QueueUtil.HEAP);
+    }
+
+    public static void run(String fpath, String plannerType, final int callbackSleep,
+        int sensorRadius, IntPriorityQueue.Factory queueFactory) throws IOException, GridGraph.CreateException
 
     {
         GUIUtil.setlf();
@@ -135,7 +161,7 @@ public abstract class GuiDriver
             throw new GridGraph.CreateException("Goal node not specified");
 
         // get planner
-        planner = getPlanner(plannerType, start, goal, graph);
+        planner = getPlanner(plannerType, start, goal, graph, queueFactory);
 
         // get GridPanel
         gridPanel = new MyGridPanel(planner, graph);
@@ -352,13 +378,17 @@ public abstract class GuiDriver
     }
 
     public static void main(String[] args) throws IOException, GridGraph.CreateException {
-        String usage = "usage: java driver.GuiDriver <fpath> <plannerType> <callbackSleep> <sensorRadius>";
-        if(args.length == 4) {
+        String usage = "usage: java driver.GuiDriver <fpath> <plannerType> <callbackSleep> <sensorRadius> [queueType]"
+            + "\nqueueType is one of " + QueueUtil.NAMES + " (default heap); planners other than"
+            + " DijkstraPlanner only accept " + QueueUtil.EXACT_NAMES;
+        if(args.length == 4 || args.length == 5) {
             String fpath = args[0];
             String plannerType = args[1];
             int callbackSleep = Integer.parseInt(args[2]);
             int sensorRadius = Integer.parseInt(args[3]);
-            run(fpath, plannerType, callbackSleep, sensorRadius);
+            IntPriorityQueue.Factory queueFactory = QueueUtil.getFactory(args.length == 5 ? args[4] : "heap",
+                !plannerType.equals("DijkstraPlanner"));
+            run(fpath, plannerType, callbackSleep, sensorRadius, queueFactory);
         }
         else {
             System.err.println(usage);
@@ -0,0 +1,294 @@
+package dstar;
+
+import java.util.*;
+import static java.lang.Math.min;
+
+import graph.AbstractGraph;
+import graph.Heuristic;
+import util.IndexedHeap;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+import util.IntDoubleConsumer;
+
+/** Calculates and stores info about each node in a graph on which the Anytime D* algorithm is applied.
+
+    Anytime D* is D* Lite whose search is focused by the heuristic inflated by a factor {@code epsilon >= 1}:
+    an overconsistent node {@code u} has key {@code [rhs(u) + epsilon * h(start, u); rhs(u)]}, while an
+    underconsistent one keeps the uninflated key {@code [g(u) + h(start, u); g(u)]}. Like in ARA*, a node is
+    expanded at most once per search; nodes which become inconsistent after they were expanded wait in a
+    separate list until the next search. When a search ends, the path from the start is at most
+    {@code epsilon} times as long as the shortest one. {@code epsilon} is then lowered and the search
+    continues from where it stopped, until it reaches 1 and the path is optimal.
+
+    Searches can be stopped after any number of {@linkplain #replanIter steps} and resumed later.
+    Like in {@link DStarLite}, a key modifier keeps queued keys valid lower bounds when the start changes,
+    and keys are recomputed lazily when they reach the top of the queue; only changing {@code epsilon}
+    recomputes the key of every queued node. CLOSED and INCONS are stamped with a search number, so that
+    starting a new search takes time proportional to INCONS rather than to the size of the graph.
+*/
+public class AnytimeDStar extends DStarLiteHelper {
+    /** Amount by which {@code epsilon} is lowered after each search. */
+    public static final double EPSILON_STEP = 0.5;
+
+    /** Goal node for path planning. */
+    protected int goal;
+    /** Local copy of graph used for path planning. */
+    protected AbstractGraph graph;
+    /** Priority queue of nodes (OPEN). */
+    protected IntPriorityQueue pq;
+    /** Creates {@link #pq}. */
+    protected IntPriorityQueue.Factory queueFactory;
+    /** Estimate of distance from the {@linkplain #getStart start} to each node, used to focus the search. */
+    protected Heuristic heuristic;
+    /** Node from which paths to {@link #goal} are wanted; usually the robot's position. */
+    protected int start;
+    /** Inflation used by the first search. */
+    protected final double initialEpsilon;
+    /** Inflation of the heuristic used by the current search. */
+    protected double epsilon;
+    /** Bound on the suboptimality of the path from {@link #start}, or infinity if no search has ended
+        since the start or the graph last changed. */
+    protected double bound;
+    /** Number of searches which have ended. */
+    protected long searchCount;
+    /** Key modifier: sum of heuristic distances between successive start nodes since keys were last
+        recomputed. Adding it to new keys keeps keys computed for earlier start nodes valid lower bounds. */
+    protected double km;
+    /** Number of the current search. */
+    private int search;
+    /** Search which expanded each node; nodes whose entry is {@link #search} are CLOSED. */
+    private int[] closed;
+    /** Inconsistent nodes which were expanded by the current search (INCONS). */
+    private int[] incons;
+    private int inconsCount;
+    /** Search in whose INCONS each node is. */
+    private int[] inIncons;
+    /** Scratch space for {@link #rekey}. */
+    private int[] open = new int[16];
+
+    /** Finds the best successor of a node. Reused across calls to avoid allocation. */
+    private class BestSuccFinder implements IntDoubleConsumer {
+        int best;
+        double minCost;
+
+        void find(int u) {
+            best = -1;
+            minCost = Double.POSITIVE_INFINITY;
+            graph.forEachSucc(u, this);
+        }
+        public void accept(int v, double w) {
+            double cost = w + getG(v);
+            if(cost < minCost) {
+                minCost = cost;
+                best = v;
+            }
+        }
+    }
+    private final BestSuccFinder bestSuccFinder = new BestSuccFinder();
+
+    /** Calls {@link #updateNode} on every predecessor of a node. */
+    private final IntDoubleConsumer predUpdater = new IntDoubleConsumer() {
+        @Override
+        public void accept(int v, double w) {
+            updateNode(v);
+        }
+    };
+
+    /**
+        @param goal {@link #goal}
+        @param graph {@link #graph}
+        @param callback {@link DStarLiteHelper.Callback} instance which will be called whenever a node's state changes.
+        @param queueFactory {@link #queueFactory}
+        @param heuristic {@link #heuristic}
+        @param initialEpsilon {@link #initialEpsilon}
+    */
+    public AnytimeDStar(int goal, AbstractGraph graph, Callback callback, IntPriorityQueue.Factory queueFactory,
+            Heuristic heuristic, double initialEpsilon) {
+        super(graph.size(), callback);
+        if(!(initialEpsilon >= 1))
+            throw new IllegalArgumentException("epsilon must be at least 1, got " + initialEpsilon);
+        this.goal = goal;
+        this.graph = graph;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "AnytimeDStar");
+        this.heuristic = heuristic;
+        this.initialEpsilon = initialEpsilon;
+        closed = new int[graph.size()];
+        incons = new int[16];
+        inIncons = new int[graph.size()];
+        reset();
+    }
+
+    public int getGoal() {return goal;}
+    public int getStart() {return start;}
+    public Heuristic getHeuristic() {return heuristic;}
+    /** Inflation of the heuristic used by the current search. */
+    public double getEpsilon() {return epsilon;}
+    /** When the last search ended, the path from the start was at most this many times as long as the
+        shortest one. Infinity if no search has ended since the start or the graph last changed. */
+    public double getBound() {return bound;}
+    /** Number of searches which have ended, so that callers can tell when a new path is available. */
+    public long getSearchCount() {return searchCount;}
+
+    /** Key of node {@code u}, whose second part is {@code min(g(u), rhs(u))}. */
+    public double getKey(int u) {
+        double gu = getG(u), rhsu = getRhs(u);
+        if(gu > rhsu)
+            return rhsu + epsilon * (heuristic.estimate(start, u) + km);
+        else
+            return gu + heuristic.estimate(start, u) + km;
+    }
+    /** Push node {@code u} on the queue with its current key. */
+    private void pushNode(int u) {
+        pq.push(u, getKey(u), getMinGRhs(u));
+    }
+
+    /** Recompute the key of every node in the queue, which makes {@link #km} unneeded. */
+    private void rekey() {
+        km = 0;
+        int size = pq.size();
+        if(open.length < size)
+            open = new int[Math.max(size, 2 * open.length)];
+        for(int k=0; k < size; ++k)
+            open[k] = pq.pop();
+        for(int k=0; k < size; ++k)
+            pushNode(open[k]);
+    }
+
+    /** Start the next search: nodes waiting in INCONS are queued and no node counts as expanded any more. */
+    private void newSearch() {
+        if(++search == Integer.MAX_VALUE) {
+            Arrays.fill(closed, 0);
+            Arrays.fill(inIncons, 0);
+            search = 1;
+        }
+        for(int k=0; k < inconsCount; ++k)
+            pushNode(incons[k]);
+        inconsCount = 0;
+    }
+
+    /** Tell the search that paths are now wanted from {@code s}, e.g. because the robot moved there.
+        A new search starts with the same {@code epsilon}. */
+    public void setStart(int s) {
+        if(s != start) {
+            km += heuristic.estimate(start, s);
+            start = s;
+            bound = Double.POSITIVE_INFINITY;
+            newSearch();
+        }
+    }
+
+    /** Start the next search with {@code epsilon} set to {@code eps}: nodes waiting in INCONS are queued
+        and no node counts as expanded any more. If {@code epsilon} changes, every key is recomputed. */
+    public void setEpsilon(double eps) {
+        eps = Math.max(eps, 1);
+        newSearch();
+        if(eps != epsilon) {
+            epsilon = eps;
+            rekey();
+        }
+    }
+
+    /** Reset things to the way they were right after the constructor was called. */
+    public void reset() {
+        if(pq == null)
+            pq = queueFactory.create(graph.size());
+        else
+            pq.clear();
+        start = goal;
+        km = 0;
+        epsilon = initialEpsilon;
+        bound = Double.POSITIVE_INFINITY;
+        Arrays.fill(closed, 0);
+        Arrays.fill(inIncons, 0);
+        search = 1;
+        inconsCount = 0;
+        setAllGRhs(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        setRhs(goal, 0);
+        pushNode(goal);
+    }
+
+    /** The best successor of a node (-1 if no successor exists), as last found by {@link #updateNode}. */
+    public int getNext(int u) {
+        if(Double.isInfinite(getG(u))) {
+            return -1;
+        }
+        if(u == goal) {
+            bestSuccFinder.find(u);
+            return bestSuccFinder.best;
+        }
+        return getSucc(u);
+    }
+
+    /** Update {@code rhs} of a node, and queue it if it is inconsistent (or put it in INCONS if the current
+        search already expanded it). */
+    public void updateNode(int u) {
+        if(u != goal) {
+            bestSuccFinder.find(u);
+            setRhs(u, bestSuccFinder.minCost, bestSuccFinder.best);
+        }
+        pq.remove(u);
+        if(!(getG(u) == getRhs(u))) {
+            if(closed[u] != search) {
+                pushNode(u);
+            }
+            else if(inIncons[u] != search) {
+                if(inconsCount == incons.length)
+                    incons = Arrays.copyOf(incons, 2 * inconsCount);
+                incons[inconsCount++] = u;
+                inIncons[u] = search;
+            }
+        }
+    }
+
+    /** Update all nodes in the set, and start a new search with the same {@code epsilon} if any changed. */
+    public void examineUpdates(Set<Integer> l) {
+        if(l.isEmpty())
+            return;
+        for(int u: l) {
+            updateNode(u);
+        }
+        bound = Double.POSITIVE_INFINITY;
+        newSearch();
+    }
+
+    /** Do one step of replanning assuming robot's current position is {@code curr}: expand a node,
+        or, if the current search has ended, publish its bound and lower {@code epsilon}.
+        Return false when the path from {@code curr} is optimal. */
+    public boolean replanIter(int curr)
+    {
+        setStart(curr);
+        if(!pq.isEmpty()) {
+            int u = pq.top();
+            double prio = pq.topPriority();
+            double gu = getG(u), rhsu = getRhs(u);
+            // compare the key of u with the key of curr the same way the queue compares keys
+            boolean topLess = IndexedHeap.compareKeys(prio, min(gu, rhsu), getKey(curr), getMinGRhs(curr)) < 0;
+            if(topLess || getRhs(curr) != getG(curr)) {
+                if(getKey(u) - prio >= IndexedHeap.EPS) {
+                    // u's key was computed for an earlier start; it only gets larger as km grows
+                    pushNode(u);
+                    return true;
+                }
+                pq.pop();
+                if(gu > rhsu) {
+                    setG(u, rhsu);
+                    closed[u] = search;
+                }
+                else {
+                    setG(u, Double.POSITIVE_INFINITY);
+                    updateNode(u);
+                }
+                graph.forEachPred(u, predUpdater);
+                return true;
+            }
+        }
+        if(Double.isInfinite(bound) || epsilon < bound) {
+            bound = epsilon;
+            searchCount++;
+        }
+        if(epsilon <= 1)
+            return false;
+        setEpsilon(epsilon - EPSILON_STEP);
+        return true;
+    }
+}
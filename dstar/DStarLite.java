@@ -4,70 +4,11 @@ import java.util.*;
 import static java.lang.Math.min;
 
 import graph.AbstractGraph;
-import util.PQ;
-
-class DStarLiteHelper {
-    /** Callback object which is called when a node's state changes. */
-    public static class Callback {
-        /** Callback method called to signal that a node {@code u}'s state has changed. */
-        public void nodeUpdate(int u) {}
-        /** Callback method called to signal that the graph's state has changed.
-            This method is generally called when bulk updates happen to a graph. */
-        public void fullUpdate() {}
-    }
-
-    private double g[];
-    private double rhs[];
-    private int size;
-    private Callback callback;
-
-    public Callback getCallback() {
-        return callback;
-    }
-    public void setCallback(Callback callback) {
-        this.callback = callback;
-    }
-
-    /** Construct a DStarLiteHelper instance which works on a graph of size {@code n}. */
-    protected DStarLiteHelper(int n, Callback callback) {
-        size = n;
-        g = new double[n];
-        rhs = new double[n];
-        this.callback = callback;
-    }
-
-    /** Get {@code g(u)} for a node {@code u}. */
-    public double getG(int u) {return g[u];}
-    /** Get {@code rhs(u)} for a node {@code u}. */
-    public double getRhs(int u) {return rhs[u];}
-    /** Get {@code min(g(u), rhs(u))} for a node {@code u}. */
-    public double getMinGRhs(int u) {
-        return min(g[u], rhs[u]);
-    }
-
-    protected void setG(int u, double g) {
-        this.g[u] = g;
-        callback.nodeUpdate(u);
-    }
-    protected void setRhs(int u, double rhs) {
-        this.rhs[u] = rhs;
-        callback.nodeUpdate(u);
-    }
-    /** Set {@code g(u)} and {@code rhs(u)} for a node {@code u}. */
-    protected void setGRhs(int u, double g, double rhs) {
-        this.g[u] = g;
-        this.rhs[u] = rhs;
-        callback.nodeUpdate(u);
-    }
-    /** Set {@code g(u)} and {@code rhs(u)} for every node {@code u}. */
-    protected void setAllGRhs(double g, double rhs) {
-        for(int i=0; i<size; ++i) {
-            this.g[i] = g;
-            this.rhs[i] = rhs;
-        }
-        callback.fullUpdate();
-    }
-}
+import graph.Heuristic;
+import util.IndexedHeap;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+import util.IntDoubleConsumer;
 
 /** Calculates and stores info about each node in a graph on which D*-lite algorithm is to be applied. */
 public class DStarLite extends DStarLiteHelper {
@@ -86,32 +27,115 @@ public class DStarLite extends DStarLiteHelper {
     /** Local copy of graph used for path planning. */
     protected AbstractGraph graph;
     /** Priority queue of nodes. */
-    protected PQ pq;
+    protected IntPriorityQueue pq;
+    /** Creates {@link #pq}. */
+    protected IntPriorityQueue.Factory queueFactory;
+    /** Estimate of distance from the {@linkplain #getStart start} to each node, used to focus the search. */
+    protected Heuristic heuristic;
+    /** Node from which paths to {@link #goal} are wanted; usually the robot's position. */
+    protected int start;
+    /** Key modifier: sum of heuristic distances between successive start nodes.
+        Adding it to new keys keeps keys computed for earlier start nodes valid lower bounds. */
+    protected double km;
+
+    /** Finds the best successor of a node. Reused across calls to avoid allocation. */
+    private class BestSuccFinder implements IntDoubleConsumer {
+        int best;
+        double minCost;
+
+        void find(int u) {
+            best = -1;
+            minCost = Double.POSITIVE_INFINITY;
+            graph.forEachSucc(u, this);
+        }
+        public void accept(int v, double w) {
+            double cost = w + getG(v);
+            if(cost < minCost) {
+                minCost = cost;
+                best = v;
+            }
+        }
+    }
+    private final BestSuccFinder bestSuccFinder = new BestSuccFinder();
+
+    /** Calls {@link #updateNode} on every predecessor of a node. */
+    private final IntDoubleConsumer predUpdater = new IntDoubleConsumer() {
+        @Override
+        public void accept(int v, double w) {
+            updateNode(v);
+        }
+    };
 
     /**
         @param goal {@link #goal}
         @param graph {@link #graph}
         @param callback {@link DStarLiteHelper.Callback} instance which will be called whenever a node's state changes.
+        @param queueFactory {@link #queueFactory}
+        @param heuristic {@link #heuristic}
     */
-    public DStarLite(int goal, AbstractGraph graph, Callback callback) {
-        super(graph.size(), callback);
+    public DStarLite(int goal, AbstractGraph graph, Callback callback, IntPriorityQueue.Factory queueFactory,
+            Heuristic heuristic) {
+        this(goal, graph, callback, queueFactory, heuristic, Storage.DENSE);
+    }
+    /** Same as {@linkplain #DStarLite the other constructor} but with the given {@linkplain Storage storage}
+        for {@code g} and {@code rhs}. */
+    public DStarLite(int goal, AbstractGraph graph, Callback callback, IntPriorityQueue.Factory queueFactory,
+            Heuristic heuristic, Storage storage) {
+        super(graph.size(), callback, storage);
         this.goal = goal;
         this.graph = graph;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "DStarLite");
+        this.heuristic = heuristic;
         reset();
     }
+    /** Same as {@linkplain #DStarLite the other constructor} but without a heuristic. */
+    public DStarLite(int goal, AbstractGraph graph, Callback callback, IntPriorityQueue.Factory queueFactory) {
+        this(goal, graph, callback, queueFactory, Heuristic.ZERO);
+    }
+    /** Same as {@linkplain #DStarLite the other constructor} but with the default priority queue. */
+    public DStarLite(int goal, AbstractGraph graph, Callback callback) {
+        this(goal, graph, callback, QueueUtil.HEAP);
+    }
     /** Same as {@linkplain #DStarLite the other constructor} but without a callback. */
     public DStarLite(int goal, AbstractGraph graph) {
         this(goal, graph, new Callback());
     }
 
     public int getGoal(int u) {return goal;}
+    public int getStart() {return start;}
+    public double getKm() {return km;}
+    public Heuristic getHeuristic() {return heuristic;}
+
+    /** Tell the search that paths are now wanted from {@code s}, e.g. because the robot moved there.
+        Keys already in the queue stay valid lower bounds, so nothing is recomputed here. */
+    public void setStart(int s) {
+        if(s != start) {
+            km += heuristic.estimate(start, s);
+            start = s;
+        }
+    }
+
+    /** First part of the key of node {@code u}: {@code min(g(u), rhs(u)) + h(start, u) + km}.
+        The second part is {@code min(g(u), rhs(u))}. */
+    public double getKey(int u) {
+        return getMinGRhs(u) + heuristic.estimate(start, u) + km;
+    }
+    /** Push node {@code u} on the queue with its current key. */
+    private void pushNode(int u) {
+        pq.push(u, getKey(u), getMinGRhs(u));
+    }
 
     /** Reset things to the way they were right after the constructor was called. */
     public void reset() {
-        pq = new PQ();
+        if(pq == null)
+            pq = getStorage() == Storage.SPARSE ? new IndexedHeap(4, 16, true) : queueFactory.create(graph.size());
+        else
+            pq.clear();
+        start = goal;
+        km = 0;
         setAllGRhs(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
         setRhs(goal, 0);
-        pq.push(goal, getMinGRhs(goal));
+        pushNode(goal);
     }
 
     /** Get the best successor node and its associated cost.
@@ -121,34 +145,51 @@ public class DStarLite extends DStarLiteHelper {
 
         If no successor exists, return (-1, {@linkplain Double#POSITIVE_INFINITY infinity}). */
     public NodeCostPair getBestSucc(int u) {
-        int best = -1;
-        double minCost = Double.POSITIVE_INFINITY;
-        for(Map.Entry<Integer, Double> entry: graph.getSuccs(u).entrySet()) {
-            int v = entry.getKey();
-            double cost = entry.getValue() + getG(v);
-            if(cost < minCost) {
-                minCost = cost;
-                best = v;
-            }
-        }
-        return new NodeCostPair(best, minCost);
+        bestSuccFinder.find(u);
+        return new NodeCostPair(bestSuccFinder.best, bestSuccFinder.minCost);
     }
 
-    /** The best successor of a node (-1 if no successor exists). */
+    /** The best successor of a node (-1 if no successor exists).
+
+        Every time {@code g} of a successor changes, {@link #updateNode} finds the best successor again, so
+        this only reads the successor it found; {@link #getBestSucc} searches the successors instead. */
     public int getNext(int u) {
         if(Double.isInfinite(getG(u))) {
             return -1;
         }
-        return getBestSucc(u).node;
+        if(u == goal) {
+            bestSuccFinder.find(u);
+            return bestSuccFinder.best;
+        }
+        return getSucc(u);
+    }
+
+    /** Path from {@code u} to the goal, following {@link #getNext}; empty if there is none. */
+    public int[] getPath(int u) {
+        int[] path = new int[16];
+        int len = 0;
+        if(getNext(u) == -1)
+            return new int[0];
+        for(int k=0; u != goal; ++k) {
+            if(u == -1 || k == graph.size())
+                return new int[0];
+            if(len == path.length)
+                path = Arrays.copyOf(path, 2 * len);
+            path[len++] = u;
+            u = getNext(u);
+        }
+        if(len == path.length)
+            path = Arrays.copyOf(path, len + 1);
+        path[len++] = goal;
+        return Arrays.copyOf(path, len);
     }
 
     /** Update {@code rhs} of a node and push it on the priority queue. */
     public void updateNode(int u) {
         if(u != goal) {
-            NodeCostPair ncp = getBestSucc(u);
-            setRhs(u, ncp.cost);
-            //System.err.println("updateNode(" + u + "): (" + ncp.node + ", " + ncp.cost + ")");
-            pq.push(u, getMinGRhs(u));
+            bestSuccFinder.find(u);
+            setRhs(u, bestSuccFinder.minCost, bestSuccFinder.best);
+            pushNode(u);
         }
     }
 
@@ -159,24 +200,34 @@ public class DStarLite extends DStarLiteHelper {
         }
     }
 
-    /** Do one step of replanning assuming robot's current position is {@code curr}. */
+    /** Do one step of replanning assuming robot's current position is {@code curr}.
+        If {@code curr} isn't the current {@linkplain #getStart start}, it becomes the start. */
     public boolean replanIter(int curr)
     {
+        setStart(curr);
         if(!pq.isEmpty()) {
-            PQ.PQElem entry = pq.top();
-            int u = entry.getValue();
-            double prio = entry.getPriority();
+            int u = pq.top();
+            double prio = pq.topPriority();
             double gu = getG(u), rhsu = getRhs(u);
             //System.err.println("u = " + u + ", prio = " + prio + ", g(u) = " + gu + ", rhs(u) = " + rhsu);
             if(gu == rhsu) {
                 pq.pop();
                 return true;
             }
-            if(prio >= getMinGRhs(curr) && !(getRhs(curr) != getG(curr))) {
+            // compare [prio; min(g(u), rhs(u))] with the key of curr, the same way the queue compares keys;
+            // with a heuristic many keys are equal up to rounding, and the second part must break those ties
+            boolean topLess = IndexedHeap.compareKeys(prio, min(gu, rhsu), getKey(curr), getMinGRhs(curr)) < 0;
+            if(!topLess && !(getRhs(curr) != getG(curr))) {
                 // !(u != v) is different from u == v when both u and v are infinity
                 //System.err.println("breaking out: u = " + u + ", prio = " + prio + ", g(u) = " + gu + ", rhs(u) = " + rhsu);
                 return false;
             }
+            double newPrio = getKey(u);
+            if(newPrio - prio >= IndexedHeap.EPS) {
+                // u's key was computed for an earlier start; it only gets larger as km grows
+                pushNode(u);
+                return true;
+            }
             pq.pop();
             if(gu > rhsu) {
                 setG(u, rhsu);
@@ -185,10 +236,7 @@ public class DStarLite extends DStarLiteHelper {
                 setG(u, Double.POSITIVE_INFINITY);
                 updateNode(u);
             }
-            for(Map.Entry<Integer, Double> entry2: graph.getPreds(u).entrySet()) {
-                int v = entry2.getKey();
-                updateNode(v);
-            }
+            graph.forEachPred(u, predUpdater);
             return true;
         }
         else {
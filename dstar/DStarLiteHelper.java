@@ -0,0 +1,146 @@
+package dstar;
+
+import java.util.*;
+import static java.lang.Math.min;
+
+import util.LongDoubleHashMap;
+
+/** Stores {@code g}, {@code rhs} and the best successor of each node for {@link DStarLite} and
+    {@link AnytimeDStar}. */
+class DStarLiteHelper {
+    /** Callback object which is called when a node's state changes. */
+    public static class Callback {
+        /** Callback method called to signal that a node {@code u}'s state has changed. */
+        public void nodeUpdate(int u) {}
+        /** Callback method called to signal that the graph's state has changed.
+            This method is generally called when bulk updates happen to a graph. */
+        public void fullUpdate() {}
+    }
+
+    /** How {@code g} and {@code rhs} are stored. */
+    public static enum Storage {
+        /** Arrays with an entry for every node. Fastest when the graph fits in memory. */
+        DENSE,
+        /** Hash maps holding only the nodes whose values differ from those given to
+            {@link #setAllGRhs}, and a heap whose position index is a hash map too, so memory and resets
+            scale with the nodes the search touches. The queue factory is then ignored, since every other
+            queue keeps an array indexed by node. */
+        SPARSE
+    }
+
+    /** Storage of {@code g} and {@code rhs} for every node. */
+    private static abstract class State {
+        abstract double getG(int u);
+        abstract double getRhs(int u);
+        abstract void setG(int u, double g);
+        abstract void setRhs(int u, double rhs);
+        abstract int getSucc(int u);
+        abstract void setSucc(int u, int v);
+        /** Set {@code g} and {@code rhs} of every node, and forget every successor. */
+        abstract void setAll(double g, double rhs);
+    }
+
+    private static class DenseState extends State {
+        private final double g[];
+        private final double rhs[];
+        private final int succ[];
+
+        DenseState(int n) {
+            g = new double[n];
+            rhs = new double[n];
+            succ = new int[n];
+        }
+        double getG(int u) {return g[u];}
+        double getRhs(int u) {return rhs[u];}
+        void setG(int u, double g) {this.g[u] = g;}
+        void setRhs(int u, double rhs) {this.rhs[u] = rhs;}
+        int getSucc(int u) {return succ[u];}
+        void setSucc(int u, int v) {succ[u] = v;}
+        void setAll(double g, double rhs) {
+            Arrays.fill(this.g, g);
+            Arrays.fill(this.rhs, rhs);
+            Arrays.fill(succ, -1);
+        }
+    }
+
+    private static class SparseState extends State {
+        private final LongDoubleHashMap g = new LongDoubleHashMap(0);
+        private final LongDoubleHashMap rhs = new LongDoubleHashMap(0);
+        /** Successors are node numbers, which doubles hold exactly. */
+        private final LongDoubleHashMap succ = new LongDoubleHashMap(-1);
+
+        double getG(int u) {return g.get(u);}
+        double getRhs(int u) {return rhs.get(u);}
+        void setG(int u, double g) {this.g.put(u, g);}
+        void setRhs(int u, double rhs) {this.rhs.put(u, rhs);}
+        int getSucc(int u) {return (int)succ.get(u);}
+        void setSucc(int u, int v) {succ.put(u, v);}
+        void setAll(double g, double rhs) {
+            this.g.clear(g);
+            this.rhs.clear(rhs);
+            succ.clear();
+        }
+    }
+
+    private final State state;
+    private final Storage storage;
+    private Callback callback;
+
+    public Callback getCallback() {
+        return callback;
+    }
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /** Construct a DStarLiteHelper instance which works on a graph of size {@code n}. */
+    protected DStarLiteHelper(int n, Callback callback, Storage storage) {
+        this.storage = storage;
+        state = storage == Storage.SPARSE ? new SparseState() : new DenseState(n);
+        this.callback = callback;
+    }
+    protected DStarLiteHelper(int n, Callback callback) {
+        this(n, callback, Storage.DENSE);
+    }
+
+    /** Get {@code g(u)} for a node {@code u}. */
+    public double getG(int u) {return state.getG(u);}
+    /** Get {@code rhs(u)} for a node {@code u}. */
+    public double getRhs(int u) {return state.getRhs(u);}
+    /** Get {@code min(g(u), rhs(u))} for a node {@code u}. */
+    public double getMinGRhs(int u) {
+        return min(state.getG(u), state.getRhs(u));
+    }
+
+    protected void setG(int u, double g) {
+        state.setG(u, g);
+        callback.nodeUpdate(u);
+    }
+    protected void setRhs(int u, double rhs) {
+        state.setRhs(u, rhs);
+        callback.nodeUpdate(u);
+    }
+    /** Set {@code rhs(u)} together with the successor {@code v} which gives it, so that the best successor
+        of {@code u} needn't be searched for again until {@code rhs(u)} changes. */
+    protected void setRhs(int u, double rhs, int v) {
+        state.setRhs(u, rhs);
+        state.setSucc(u, v);
+        callback.nodeUpdate(u);
+    }
+    /** Successor last given to {@link #setRhs(int, double, int)} for node {@code u}, or -1 if there is none. */
+    protected int getSucc(int u) {return state.getSucc(u);}
+    /** Set {@code g(u)} and {@code rhs(u)} for a node {@code u}. */
+    protected void setGRhs(int u, double g, double rhs) {
+        state.setG(u, g);
+        state.setRhs(u, rhs);
+        callback.nodeUpdate(u);
+    }
+    /** Set {@code g(u)} and {@code rhs(u)} for every node {@code u}, and forget every successor. */
+    protected void setAllGRhs(double g, double rhs) {
+        state.setAll(g, rhs);
+        callback.fullUpdate();
+    }
+}
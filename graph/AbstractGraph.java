@@ -4,6 +4,8 @@ import java.util.Map;
 import java.util.Set;
 
 import graph.GenGraph;
+import graph.CsrGraph;
+import util.IntDoubleConsumer;
 
 /** Abstract class for representing graphs.
 
@@ -30,6 +32,35 @@ public abstract class AbstractGraph
         edges joining them to {@code node}. This map is a copy and can be modified. */
     public abstract Map<Integer, Double> getSuccsCopy(int node);
 
+    /** Call {@code visitor} on every successor of {@code node} along with the weight
+        of the edge joining {@code node} to it.
+
+        Subclasses override this to iterate over their own storage without allocating maps.
+        The visitor must not modify the graph. */
+    public void forEachSucc(int node, IntDoubleConsumer visitor) {
+        for(Map.Entry<Integer, Double> entry: getSuccs(node).entrySet())
+            visitor.accept(entry.getKey(), entry.getValue());
+    }
+
+    /** Call {@code visitor} on every predecessor of {@code node} along with the weight
+        of the edge joining it to {@code node}.
+
+        Subclasses override this to iterate over their own storage without allocating maps.
+        The visitor must not modify the graph. */
+    public void forEachPred(int node, IntDoubleConsumer visitor) {
+        for(Map.Entry<Integer, Double> entry: getPreds(node).entrySet())
+            visitor.accept(entry.getKey(), entry.getValue());
+    }
+
+    /** Number of successors of {@code node}. */
+    public int getSuccDegree(int node) {
+        return getSuccs(node).size();
+    }
+    /** Number of predecessors of {@code node}. */
+    public int getPredDegree(int node) {
+        return getPreds(node).size();
+    }
+
     /** Get neighbors (both predecessors and successors) of {@code node}. */
     public abstract Set<Integer> getNbrs(int node);
 
@@ -44,9 +75,21 @@ public abstract class AbstractGraph
 
     public abstract String toString();
 
+    /** Return an admissible {@link Heuristic} for this graph.
+        Graphs which know nothing about the geometry of their nodes return {@link Heuristic#ZERO}. */
+    public Heuristic getHeuristic() {
+        return Heuristic.ZERO;
+    }
+
     /** Return a {@link GenGraph} instance. It is possible to convert every {@link AbstractGraph}
         instance to a {@link GenGraph} instance. */
     synchronized public GenGraph toGenGraph() {
         return new GenGraph(this);
     }
+
+    /** Return a {@link CsrGraph} instance with the same edges as this graph.
+        The topology of the returned graph is fixed, but its edge weights can be changed. */
+    synchronized public CsrGraph toCsrGraph() {
+        return new CsrGraph(this);
+    }
 }
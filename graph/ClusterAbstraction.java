@@ -0,0 +1,499 @@
+package graph;
+
+import java.util.*;
+import static java.lang.Math.min;
+
+import util.IndexedHeap;
+import util.IntDoubleConsumer;
+
+/** Abstraction of a {@link GridGraph} for hierarchical path-finding (HPA*).
+
+    The grid is divided into square clusters. Wherever edges cross the border between two clusters,
+    transitions are chosen: a maximal run of straight crossing edges between nodes of one type gets
+    a transition in its middle if it is at most {@link #MAX_SHORT_ENTRANCE} long and one at each end
+    otherwise. A diagonal crossing edge gets its own transition if it crosses a cluster corner, so that
+    diagonal paths don't have to zigzag there, or if neither of the two nodes next to both of its ends
+    has the same type; otherwise a straight run carries the same connection.
+    The nodes at both ends of each transition become nodes of an abstract {@link GenGraph}, linked by
+    the transition's edge (an inter-edge) and, within each cluster, by edges weighted with the length of
+    the shortest path which stays inside the cluster (intra-edges). Extra nodes, such as a path's
+    endpoints, can be {@linkplain #pin pinned} into the abstract graph.
+
+    The abstraction registers an {@link GridGraph.UpdateCallback} on the grid which only marks the updated
+    node's cluster, and borders it lies on, as dirty. {@link #repair} then recomputes the transitions of
+    dirty borders and the intra-edges of dirty clusters, leaving the rest of the abstract graph alone.
+*/
+public class ClusterAbstraction
+{
+    /** Longest run of crossing edges which gets a single transition. */
+    public static final int MAX_SHORT_ENTRANCE = 6;
+
+    private final GridGraph grid;
+    private final int rows, cols;
+    private final int clusterSize, clusterRows, clusterCols;
+    private final GenGraph abstractGraph = new GenGraph(0);
+
+    /** Abstract node of each grid node which has one. */
+    private final HashMap<Integer, Integer> nodeOf = new HashMap<Integer, Integer>();
+    /** Grid node of each abstract node, or -1 if the abstract node isn't in use. */
+    private int[] cellOf = new int[16];
+    /** Number of transitions and pins which use each abstract node. */
+    private int[] refs = new int[16];
+    /** Abstract nodes which aren't in use and can be given to new grid nodes. */
+    private int[] freeNodes = new int[16];
+    private int nFree;
+    /** Abstract nodes in each cluster. Only the first {@code clusterNodeCount[c]} entries of
+        {@code clusterNodes[c]} are valid. */
+    private int[][] clusterNodes;
+    private int[] clusterNodeCount;
+
+    /** Transitions across the border between cluster (ci, cj) and (ci, cj+1), as pairs of grid nodes,
+        indexed by {@code ci * clusterCols + cj}. Diagonal transitions to cluster (ci+1, cj&plusmn;1) are included. */
+    private int[][] vTransitions;
+    /** Transitions across the border between cluster (ci, cj) and (ci+1, cj), indexed by {@code ci * clusterCols + cj}. */
+    private int[][] hTransitions;
+
+    private boolean[] dirtyCluster, dirtyV, dirtyH;
+    private int[] dirtyClusters = new int[16], dirtyVs = new int[16], dirtyHs = new int[16];
+    private int nDirtyClusters, nDirtyVs, nDirtyHs;
+    /** Abstract nodes added since the last repair. Unless their cluster is dirty anyway,
+        only their own intra-edges are computed. */
+    private int[] newNodes = new int[16];
+    private int nNewNodes;
+
+    private final GridGraph.UpdateCallback updateCallback;
+    /** Callback which was registered on the grid before this abstraction's own. */
+    private final GridGraph.UpdateCallback previousCallback;
+
+    /** Scratch space for searches within a cluster, indexed by position in the cluster. */
+    private final double[] localDist;
+    private final int[] localParent;
+    /** Nodes whose distance the current search must find are marked with {@link #searchStamp}. */
+    private final int[] localWanted;
+    private int searchStamp;
+    private final IndexedHeap localHeap;
+    private final LocalRelaxer localRelaxer = new LocalRelaxer();
+
+    /** Relaxes edges out of the node being expanded, ignoring nodes outside its cluster.
+        Reused across expansions to avoid allocation. */
+    private class LocalRelaxer implements IntDoubleConsumer {
+        int u, cluster;
+
+        public void accept(int v, double w) {
+            if(getCluster(v) != cluster)
+                return;
+            int lv = localIndex(v);
+            double dist2 = localDist[localIndex(u)] + w;
+            if(dist2 < localDist[lv]) {
+                localDist[lv] = dist2;
+                localParent[lv] = u;
+                localHeap.push(lv, dist2);
+            }
+        }
+    }
+
+    /** Build the abstraction of {@code grid} with clusters of {@code clusterSize} &times; {@code clusterSize} nodes
+        and register a callback on {@code grid} to track updates. */
+    public ClusterAbstraction(GridGraph grid, int clusterSize) {
+        if(clusterSize < 2)
+            throw new IllegalArgumentException("cluster size must be at least 2, got " + clusterSize);
+        this.grid = grid;
+        this.rows = grid.getRows();
+        this.cols = grid.getCols();
+        this.clusterSize = clusterSize;
+        this.clusterRows = (rows + clusterSize - 1) / clusterSize;
+        this.clusterCols = (cols + clusterSize - 1) / clusterSize;
+        int nClusters = clusterRows * clusterCols;
+        clusterNodes = new int[nClusters][];
+        clusterNodeCount = new int[nClusters];
+        vTransitions = new int[nClusters][];
+        hTransitions = new int[nClusters][];
+        dirtyCluster = new boolean[nClusters];
+        dirtyV = new boolean[nClusters];
+        dirtyH = new boolean[nClusters];
+        localDist = new double[clusterSize * clusterSize];
+        localParent = new int[clusterSize * clusterSize];
+        localWanted = new int[clusterSize * clusterSize];
+        localHeap = new IndexedHeap(clusterSize * clusterSize);
+
+        for(int ci=0; ci < clusterRows; ++ci) {
+            for(int cj=0; cj < clusterCols; ++cj) {
+                markCluster(ci * clusterCols + cj);
+                markV(ci, cj);
+                markH(ci, cj);
+            }
+        }
+        updateCallback = new GridGraph.UpdateCallback() {
+            public void run(int i, int j) {
+                markDirty(i, j);
+                if(previousCallback != null)
+                    previousCallback.run(i, j);
+            }
+        };
+        synchronized(grid) {
+            previousCallback = grid.getCallback();
+            grid.setCallback(updateCallback);
+        }
+        repair();
+    }
+
+    /** Stop tracking updates to the grid, restoring the callback which was registered before,
+        unless another callback has replaced this abstraction's own in the meantime. */
+    public void detach() {
+        synchronized(grid) {
+            if(grid.getCallback() == updateCallback)
+                grid.setCallback(previousCallback);
+        }
+    }
+
+    public GridGraph getGrid() {return grid;}
+    public int getClusterSize() {return clusterSize;}
+    /** The abstract graph. Don't modify it. */
+    public GenGraph getGraph() {return abstractGraph;}
+
+    /** Cluster which grid node {@code u} belongs to. */
+    public int getCluster(int u) {
+        return (u / cols) / clusterSize * clusterCols + (u % cols) / clusterSize;
+    }
+    /** Grid node of abstract node {@code a}, or -1 if {@code a} isn't in use. */
+    synchronized public int getCell(int a) {
+        return cellOf[a];
+    }
+    /** Abstract node of grid node {@code u}, or -1 if it has none. */
+    synchronized public int getNode(int u) {
+        Integer a = nodeOf.get(u);
+        return a == null ? -1 : a;
+    }
+    /** Number of grid nodes which have an abstract node. */
+    synchronized public int getNodeCount() {
+        return nodeOf.size();
+    }
+
+    private int localIndex(int u) {
+        return (u / cols) % clusterSize * clusterSize + (u % cols) % clusterSize;
+    }
+
+    private static int[] push(int[] list, int n, int x) {
+        if(n == list.length)
+            list = Arrays.copyOf(list, 2 * n);
+        list[n] = x;
+        return list;
+    }
+
+    private void markCluster(int c) {
+        if(!dirtyCluster[c]) {
+            dirtyCluster[c] = true;
+            dirtyClusters = push(dirtyClusters, nDirtyClusters++, c);
+        }
+    }
+    private void markV(int ci, int cj) {
+        if(ci < 0 || ci >= clusterRows || cj < 0 || cj >= clusterCols - 1)
+            return;
+        int b = ci * clusterCols + cj;
+        if(!dirtyV[b]) {
+            dirtyV[b] = true;
+            dirtyVs = push(dirtyVs, nDirtyVs++, b);
+        }
+    }
+    private void markH(int ci, int cj) {
+        if(ci < 0 || ci >= clusterRows - 1 || cj < 0 || cj >= clusterCols)
+            return;
+        int b = ci * clusterCols + cj;
+        if(!dirtyH[b]) {
+            dirtyH[b] = true;
+            dirtyHs = push(dirtyHs, nDirtyHs++, b);
+        }
+    }
+
+    /** Note that node ({@code i}, {@code j}) of the grid changed. */
+    synchronized private void markDirty(int i, int j) {
+        int ci = i / clusterSize, cj = j / clusterSize;
+        markCluster(ci * clusterCols + cj);
+        boolean top = i % clusterSize == 0, bottom = i % clusterSize == clusterSize - 1;
+        boolean left = j % clusterSize == 0, right = j % clusterSize == clusterSize - 1;
+        if(left)
+            markV(ci, cj - 1);
+        if(right)
+            markV(ci, cj);
+        if(bottom)
+            markH(ci, cj);
+        if(top) {
+            markH(ci - 1, cj);
+            // diagonal transitions of the band above can end in this row
+            if(left)
+                markV(ci - 1, cj - 1);
+            if(right)
+                markV(ci - 1, cj);
+        }
+    }
+
+    /** Add grid node {@code u} to the abstract graph if it isn't there yet, and return its abstract node.
+        The abstract node stays until {@link #unpin} has been called as many times as this.
+        Intra-edges of a new node are added by the next {@link #repair}. */
+    synchronized public int pin(int u) {
+        Integer a = nodeOf.get(u);
+        if(a != null) {
+            refs[a]++;
+            return a;
+        }
+        int b;
+        if(nFree > 0) {
+            b = freeNodes[--nFree];
+        }
+        else {
+            b = abstractGraph.addNode();
+            if(b >= cellOf.length) {
+                cellOf = Arrays.copyOf(cellOf, 2 * cellOf.length);
+                refs = Arrays.copyOf(refs, 2 * refs.length);
+            }
+        }
+        cellOf[b] = u;
+        refs[b] = 1;
+        nodeOf.put(u, b);
+        int c = getCluster(u);
+        if(clusterNodes[c] == null)
+            clusterNodes[c] = new int[4];
+        clusterNodes[c] = push(clusterNodes[c], clusterNodeCount[c]++, b);
+        newNodes = push(newNodes, nNewNodes++, b);
+        return b;
+    }
+
+    /** Undo one call to {@link #pin}. When a node has no pins or transitions left, it is removed
+        from the abstract graph with all of its edges. */
+    synchronized public void unpin(int u) {
+        int a = nodeOf.get(u);
+        if(--refs[a] > 0)
+            return;
+        for(int b: abstractGraph.getSuccsCopy(a).keySet()) {
+            abstractGraph.breakEdge(a, b);
+            abstractGraph.breakEdge(b, a);
+        }
+        int c = getCluster(u);
+        int[] nodes = clusterNodes[c];
+        for(int k=0; k < clusterNodeCount[c]; ++k) {
+            if(nodes[k] == a) {
+                nodes[k] = nodes[--clusterNodeCount[c]];
+                break;
+            }
+        }
+        nodeOf.remove(u);
+        cellOf[a] = -1;
+        freeNodes = push(freeNodes, nFree++, a);
+    }
+
+    /** Bring the abstract graph up to date with the grid by recomputing the transitions of dirty borders
+        and the intra-edges of dirty clusters. Return the number of clusters recomputed. */
+    public int repair() {
+        // the grid's lock is taken first, like when an update calls markDirty
+        synchronized(grid) {
+            synchronized(this) {
+                for(int k=0; k < nDirtyVs; ++k) {
+                    int b = dirtyVs[k];
+                    dirtyV[b] = false;
+                    vTransitions[b] = replaceTransitions(vTransitions[b], computeTransitions(true, b));
+                }
+                nDirtyVs = 0;
+                for(int k=0; k < nDirtyHs; ++k) {
+                    int b = dirtyHs[k];
+                    dirtyH[b] = false;
+                    hTransitions[b] = replaceTransitions(hTransitions[b], computeTransitions(false, b));
+                }
+                nDirtyHs = 0;
+                for(int k=0; k < nNewNodes; ++k) {
+                    int a = newNodes[k];
+                    if(cellOf[a] != -1 && !dirtyCluster[getCluster(cellOf[a])])
+                        connect(a);
+                }
+                nNewNodes = 0;
+                for(int k=0; k < nDirtyClusters; ++k) {
+                    int c = dirtyClusters[k];
+                    dirtyCluster[c] = false;
+                    recomputeCluster(c);
+                }
+                int n = nDirtyClusters;
+                nDirtyClusters = 0;
+                return n;
+            }
+        }
+    }
+
+    /** Pin the nodes of {@code newPairs}, set their inter-edges and unpin the nodes of {@code oldPairs}.
+        Return {@code newPairs}. */
+    private int[] replaceTransitions(int[] oldPairs, int[] newPairs) {
+        for(int k=0; k < newPairs.length; k += 2) {
+            int a = pin(newPairs[k]), b = pin(newPairs[k+1]);
+            abstractGraph.update(a, b, grid.getWeight(newPairs[k], newPairs[k+1]), true);
+        }
+        if(oldPairs != null) {
+            for(int k=0; k < oldPairs.length; k += 2) {
+                boolean kept = false;
+                for(int m=0; m < newPairs.length && !kept; m += 2)
+                    kept = newPairs[m] == oldPairs[k] && newPairs[m+1] == oldPairs[k+1];
+                if(!kept) {
+                    int a = nodeOf.get(oldPairs[k]), b = nodeOf.get(oldPairs[k+1]);
+                    abstractGraph.breakEdge(a, b);
+                    abstractGraph.breakEdge(b, a);
+                }
+                unpin(oldPairs[k]);
+                unpin(oldPairs[k+1]);
+            }
+        }
+        return newPairs;
+    }
+
+    /** Grid node at position {@code along} of line {@code line}, which is a column for vertical borders
+        and a row for horizontal ones. */
+    private int at(boolean vertical, int along, int line) {
+        return vertical ? along * cols + line : line * cols + along;
+    }
+
+    /** Compute the transitions across border {@code b} as pairs of grid nodes. */
+    private int[] computeTransitions(boolean vertical, int b) {
+        int ci = b / clusterCols, cj = b % clusterCols;
+        int band = vertical ? ci : cj, across = vertical ? cj : ci;
+        int line0 = (across + 1) * clusterSize - 1, line1 = line0 + 1;
+        int first = band * clusterSize, last = min(vertical ? rows : cols, first + clusterSize) - 1;
+        // diagonal edges of vertical borders may reach into the next band; those of horizontal borders may not
+        int lastDiag = vertical ? min(rows - 1, last + 1) : last;
+        int[] pairs = new int[8];
+        int n = 0;
+        int runStart = -1;
+        for(int x = first; x <= last; ++x) {
+            int t0 = grid.getType(at(vertical, x, line0));
+            boolean straight = t0 == grid.getType(at(vertical, x, line1));
+            if(runStart >= 0 && !(straight && t0 == grid.getType(at(vertical, x - 1, line0)))) {
+                n = addRun(pairs, n, vertical, runStart, x - 1, line0, line1);
+                pairs = growPairs(pairs, n);
+                runStart = -1;
+            }
+            if(straight && runStart < 0)
+                runStart = x;
+            if(x + 1 <= lastDiag) {
+                boolean corner = x == last;
+                n = addDiagonal(pairs, n, corner, at(vertical, x, line0), at(vertical, x + 1, line1),
+                    at(vertical, x + 1, line0), at(vertical, x, line1));
+                pairs = growPairs(pairs, n);
+                n = addDiagonal(pairs, n, corner, at(vertical, x + 1, line0), at(vertical, x, line1),
+                    at(vertical, x, line0), at(vertical, x + 1, line1));
+                pairs = growPairs(pairs, n);
+            }
+        }
+        if(runStart >= 0)
+            n = addRun(pairs, n, vertical, runStart, last, line0, line1);
+        return Arrays.copyOf(pairs, n);
+    }
+
+    /** Make room for at least 4 more entries after the first {@code n} of {@code pairs}. */
+    private static int[] growPairs(int[] pairs, int n) {
+        return n + 4 > pairs.length ? Arrays.copyOf(pairs, 2 * pairs.length) : pairs;
+    }
+
+    private int addRun(int[] pairs, int n, boolean vertical, int start, int end, int line0, int line1) {
+        if(end - start + 1 <= MAX_SHORT_ENTRANCE) {
+            int mid = (start + end) / 2;
+            pairs[n++] = at(vertical, mid, line0);
+            pairs[n++] = at(vertical, mid, line1);
+        }
+        else {
+            pairs[n++] = at(vertical, start, line0);
+            pairs[n++] = at(vertical, start, line1);
+            pairs[n++] = at(vertical, end, line0);
+            pairs[n++] = at(vertical, end, line1);
+        }
+        return n;
+    }
+
+    /** Add a transition for the diagonal edge from {@code u} to {@code v} if it crosses a cluster corner,
+        or otherwise if neither of the nodes {@code w1}, {@code w2} next to both of them has the same type. */
+    private int addDiagonal(int[] pairs, int n, boolean corner, int u, int v, int w1, int w2) {
+        int t = grid.getType(u);
+        if(grid.getType(v) == t && (corner || (grid.getType(w1) != t && grid.getType(w2) != t))) {
+            pairs[n++] = u;
+            pairs[n++] = v;
+        }
+        return n;
+    }
+
+    /** Replace the intra-edges of cluster {@code c}. */
+    private void recomputeCluster(int c) {
+        int[] nodes = clusterNodes[c];
+        int n = clusterNodeCount[c];
+        for(int k=0; k < n; ++k) {
+            int a = nodes[k];
+            for(int b: abstractGraph.getSuccsCopy(a).keySet()) {
+                if(getCluster(cellOf[b]) == c) {
+                    abstractGraph.breakEdge(a, b);
+                    abstractGraph.breakEdge(b, a);
+                }
+            }
+        }
+        for(int k=0; k+1 < n; ++k) {
+            int a = nodes[k];
+            ++searchStamp;
+            for(int m = k+1; m < n; ++m)
+                localWanted[localIndex(cellOf[nodes[m]])] = searchStamp;
+            searchCluster(cellOf[a], n - k - 1);
+            for(int m = k+1; m < n; ++m) {
+                int b = nodes[m];
+                double d = localDist[localIndex(cellOf[b])];
+                if(!Double.isInfinite(d))
+                    abstractGraph.update(a, b, d, true);
+            }
+        }
+    }
+
+    /** Add the intra-edges of abstract node {@code a}. */
+    private void connect(int a) {
+        int u = cellOf[a], c = getCluster(u);
+        ++searchStamp;
+        for(int k=0; k < clusterNodeCount[c]; ++k)
+            localWanted[localIndex(cellOf[clusterNodes[c][k]])] = searchStamp;
+        searchCluster(u, clusterNodeCount[c]);
+        for(int k=0; k < clusterNodeCount[c]; ++k) {
+            int b = clusterNodes[c][k];
+            double d = localDist[localIndex(cellOf[b])];
+            if(b != a && !Double.isInfinite(d))
+                abstractGraph.update(a, b, d, true);
+        }
+    }
+
+    /** Dijkstra's algorithm from grid node {@code src} over the nodes of its cluster, stopping early
+        once {@code wanted} nodes marked with {@link #searchStamp} in {@link #localWanted} are reached. */
+    private void searchCluster(int src, int wanted) {
+        Arrays.fill(localDist, Double.POSITIVE_INFINITY);
+        localHeap.clear();
+        int cluster = getCluster(src);
+        int base = (src / cols) / clusterSize * clusterSize * cols + (src % cols) / clusterSize * clusterSize;
+        localDist[localIndex(src)] = 0;
+        localParent[localIndex(src)] = -1;
+        localHeap.push(localIndex(src), 0);
+        localRelaxer.cluster = cluster;
+        while(!localHeap.isEmpty()) {
+            int lu = localHeap.pop();
+            int u = base + lu / clusterSize * cols + lu % clusterSize;
+            if(localWanted[lu] == searchStamp && --wanted == 0)
+                break;
+            localRelaxer.u = u;
+            grid.forEachSucc(u, localRelaxer);
+        }
+    }
+
+    /** Append to {@code path} a shortest path from grid node {@code src} to {@code dst} which stays in their
+        cluster, excluding {@code src}. Both nodes must be in the same cluster.
+        Return the length of the path, or infinity (appending nothing) if there is none. */
+    synchronized public double findPath(int src, int dst, List<Integer> path) {
+        if(getCluster(src) != getCluster(dst))
+            throw new IllegalArgumentException("nodes " + src + " and " + dst + " are in different clusters");
+        ++searchStamp;
+        localWanted[localIndex(dst)] = searchStamp;
+        searchCluster(src, 1);
+        double d = localDist[localIndex(dst)];
+        if(Double.isInfinite(d))
+            return d;
+        int start = path.size();
+        for(int u = dst; u != src; u = localParent[localIndex(u)])
+            path.add(u);
+        Collections.reverse(path.subList(start, path.size()));
+        return d;
+    }
+}
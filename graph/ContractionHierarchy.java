@@ -0,0 +1,648 @@
+package graph;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import graph.GenGraph;
+import util.IndexedHeap;
+import util.IntDoubleConsumer;
+
+/** Contraction hierarchy of a {@link GenGraph}, for answering many point-to-point shortest path queries.
+
+    Nodes are contracted one by one in order of importance. Contracting node {@code v} removes it from the
+    remaining graph and adds a shortcut {@code u -> w} for each pair of remaining neighbors whose shortest
+    path is {@code u -> v -> w}, unless a witness search finds another path which is no longer.
+    Importance is the edge difference (shortcuts added minus edges removed) plus the number of neighbors
+    already contracted. Contraction proceeds in rounds: each round contracts every node whose importance is
+    lower than that of all of its remaining neighbors, running the witness searches of different nodes
+    in parallel, and then recomputes the importance of their neighbors in parallel.
+
+    A query ({@link Query}) runs Dijkstra's algorithm forwards from the source and backwards from the target,
+    each only along edges to more important nodes, and unpacks the shortcuts on the best path it finds.
+
+    After edge weights of the graph change (or edges are added or broken), {@link #customize} brings the
+    hierarchy up to date without reordering the nodes: it recomputes the weight of every edge bottom-up
+    from the edges below it, and only runs witness searches for pairs of neighbors which have no edge yet.
+    Nodes can't be added to the graph after the hierarchy is built.
+*/
+public class ContractionHierarchy
+{
+    /** Witness searches give up after settling this many nodes, and a shortcut is added. */
+    public static final int DEFAULT_WITNESS_LIMIT = 100;
+
+    /** Edges leaving or entering a node. Edges to nodes with higher rank come first; while the hierarchy is
+        being built, those are the edges to nodes which aren't contracted yet. */
+    static class EdgeList {
+        int size;
+        /** Number of edges, at the start of the list, to nodes with higher rank. */
+        int upCount;
+        int[] nodes = new int[2];
+        double[] weights = new double[2];
+        /** Weight of the edge in the graph, or infinity for shortcuts. */
+        double[] origs = new double[2];
+        /** Node which a shortcut skips, or -1 if the edge is the graph's own edge. */
+        int[] mids = new int[2];
+
+        int find(int v) {
+            for(int k=0; k < size; ++k)
+                if(nodes[k] == v)
+                    return k;
+            return -1;
+        }
+
+        void add(int v, double w, double orig, int mid) {
+            if(size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                weights = Arrays.copyOf(weights, 2 * size);
+                origs = Arrays.copyOf(origs, 2 * size);
+                mids = Arrays.copyOf(mids, 2 * size);
+            }
+            nodes[size] = v;
+            weights[size] = w;
+            origs[size] = orig;
+            mids[size] = mid;
+            size++;
+        }
+
+        /** Add an edge which goes to a node with higher rank. */
+        void addUp(int v, double w, double orig, int mid) {
+            add(v, w, orig, mid);
+            swap(size - 1, upCount++);
+        }
+
+        /** Move the edge to {@code v} out of the edges to nodes with higher rank. */
+        void removeUp(int v) {
+            for(int k=0; k < upCount; ++k)
+                if(nodes[k] == v) {
+                    swap(k, --upCount);
+                    return;
+                }
+        }
+
+        void swap(int i, int j) {
+            int t = nodes[i]; nodes[i] = nodes[j]; nodes[j] = t;
+            double d = weights[i]; weights[i] = weights[j]; weights[j] = d;
+            d = origs[i]; origs[i] = origs[j]; origs[j] = d;
+            t = mids[i]; mids[i] = mids[j]; mids[j] = t;
+        }
+    }
+
+    /** Shortcuts found for one node. */
+    static class ShortcutList {
+        int size;
+        int[] from = new int[4], to = new int[4];
+        double[] weights = new double[4];
+
+        void add(int u, int w, double weight) {
+            if(size == from.length) {
+                from = Arrays.copyOf(from, 2 * size);
+                to = Arrays.copyOf(to, 2 * size);
+                weights = Arrays.copyOf(weights, 2 * size);
+            }
+            from[size] = u;
+            to[size] = w;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    /** Dijkstra's algorithm limited to nodes ranked above some rank, with state reused across searches. */
+    private class WitnessSearch {
+        final double[] dist = new double[n];
+        final int[] stamp = new int[n];
+        int current;
+        final IndexedHeap heap = new IndexedHeap(n);
+        final ShortcutList shortcuts = new ShortcutList();
+
+        /** Search from {@code src} avoiding {@code avoid}, nodes with rank at most {@code minRank} and nodes marked
+            in {@code skip} (which may be null), until nodes farther than {@code maxCost} are reached or
+            {@link #witnessLimit} nodes are settled. If {@code upOnly}, only edges to nodes with higher rank are
+            followed, which is enough while the hierarchy is being built. */
+        void run(int src, int avoid, double maxCost, int minRank, boolean[] skip, boolean upOnly) {
+            if(++current == Integer.MAX_VALUE) {
+                Arrays.fill(stamp, 0);
+                current = 1;
+            }
+            heap.clear();
+            dist[src] = 0;
+            stamp[src] = current;
+            heap.push(src, 0);
+            for(int settled = 0; !heap.isEmpty() && settled < witnessLimit; ++settled) {
+                if(heap.topPriority() > maxCost)
+                    break;
+                int x = heap.pop();
+                EdgeList l = out[x];
+                int end = upOnly ? l.upCount : l.size;
+                for(int k=0; k < end; ++k) {
+                    int y = l.nodes[k];
+                    if(y == avoid || rank[y] <= minRank || (skip != null && skip[y]))
+                        continue;
+                    double d = dist[x] + l.weights[k];
+                    if(stamp[y] != current || d < dist[y]) {
+                        stamp[y] = current;
+                        dist[y] = d;
+                        heap.push(y, d);
+                    }
+                }
+            }
+        }
+
+        /** Length of the shortest path to {@code y} found by the last search, or infinity. */
+        double distanceTo(int y) {
+            return stamp[y] == current ? dist[y] : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private final GenGraph graph;
+    private final int n;
+    private final int witnessLimit;
+    private final ForkJoinPool pool;
+    /** Edges leaving each node, including shortcuts. */
+    private final EdgeList[] out;
+    /** Edges entering each node, including shortcuts. */
+    private final EdgeList[] in;
+    /** Position of each node in the contraction order; {@code Integer.MAX_VALUE} while it isn't contracted. */
+    private final int[] rank;
+    /** Node with each rank. */
+    private final int[] order;
+    private int shortcutCount;
+    private final ThreadLocal<WitnessSearch> searches = new ThreadLocal<WitnessSearch>() {
+        @Override
+        protected WitnessSearch initialValue() {
+            return new WitnessSearch();
+        }
+    };
+    /** Query used by {@link #distance} and {@link #getPath}. */
+    private Query query;
+
+    /** Build a hierarchy of {@code graph} on the common pool with {@link #DEFAULT_WITNESS_LIMIT}. */
+    public ContractionHierarchy(GenGraph graph) {
+        this(graph, DEFAULT_WITNESS_LIMIT, ForkJoinPool.commonPool());
+    }
+    /** Build a hierarchy of {@code graph}.
+        @param witnessLimit Number of nodes a witness search settles before giving up.
+        @param pool Pool on which witness searches are run. */
+    public ContractionHierarchy(GenGraph graph, int witnessLimit, ForkJoinPool pool) {
+        this.graph = graph;
+        this.witnessLimit = witnessLimit;
+        this.pool = pool;
+        synchronized(graph) {
+            n = graph.size();
+            rank = new int[n];
+            Arrays.fill(rank, Integer.MAX_VALUE);
+            out = new EdgeList[n];
+            in = new EdgeList[n];
+            for(int u=0; u < n; ++u) {
+                out[u] = new EdgeList();
+                in[u] = new EdgeList();
+            }
+            for(int u=0; u < n; ++u) {
+                final int src = u;
+                graph.forEachSucc(u, new IntDoubleConsumer() {
+                    public void accept(int v, double w) {
+                        if(v != src)
+                            addEdge(src, v, w, w, -1);
+                    }
+                });
+            }
+        }
+        order = new int[n];
+        contract();
+    }
+
+    public GenGraph getGraph() {return graph;}
+    /** Position of node {@code u} in the contraction order. */
+    public int getRank(int u) {return rank[u];}
+    /** Number of shortcuts in the hierarchy. */
+    synchronized public int getShortcutCount() {return shortcutCount;}
+
+    private void addEdge(int u, int w, double weight, double orig, int mid) {
+        // while neither end is contracted, both ranks are Integer.MAX_VALUE and the edge is upward at both ends
+        if(rank[w] >= rank[u])
+            out[u].addUp(w, weight, orig, mid);
+        else
+            out[u].add(w, weight, orig, mid);
+        if(rank[u] >= rank[w])
+            in[w].addUp(u, weight, orig, mid);
+        else
+            in[w].add(u, weight, orig, mid);
+    }
+    /** Set the weight of edge {@code u -> w}, which is at position {@code k} of {@code out[u]}. */
+    private void setEdge(int u, int k, int w, double weight, double orig, int mid) {
+        out[u].weights[k] = weight;
+        out[u].origs[k] = orig;
+        out[u].mids[k] = mid;
+        int k2 = in[w].find(u);
+        in[w].weights[k2] = weight;
+        in[w].origs[k2] = orig;
+        in[w].mids[k2] = mid;
+    }
+    /** Add {@code u -> w} as a shortcut past {@code mid}, or lower the weight of the existing edge. */
+    private void addShortcut(int u, int w, double weight, int mid) {
+        int k = out[u].find(w);
+        if(k < 0) {
+            addEdge(u, w, weight, Double.POSITIVE_INFINITY, mid);
+            shortcutCount++;
+        }
+        else if(weight < out[u].weights[k]) {
+            setEdge(u, k, w, weight, out[u].origs[k], mid);
+        }
+    }
+
+    /** Find the shortcuts needed to contract {@code v} from the graph of uncontracted nodes not marked in
+        {@code skip} (which may be null). */
+    private void findShortcuts(int v, WitnessSearch ws, boolean[] skip, ShortcutList list) {
+        list.size = 0;
+        EdgeList inL = in[v], outL = out[v];
+        for(int i=0; i < inL.upCount; ++i) {
+            int u = inL.nodes[i];
+            double wu = inL.weights[i];
+            if((skip != null && skip[u]) || Double.isInfinite(wu))
+                continue;
+            double maxCost = -1;
+            for(int o=0; o < outL.upCount; ++o) {
+                int w = outL.nodes[o];
+                double cand = wu + outL.weights[o];
+                if(w != u && (skip == null || !skip[w]) && !Double.isInfinite(cand))
+                    maxCost = Math.max(maxCost, cand);
+            }
+            if(maxCost < 0)
+                continue;
+            ws.run(u, v, maxCost, -1, skip, true);
+            for(int o=0; o < outL.upCount; ++o) {
+                int w = outL.nodes[o];
+                if(w == u || (skip != null && skip[w]))
+                    continue;
+                double cand = wu + outL.weights[o];
+                if(!Double.isInfinite(cand) && ws.distanceTo(w) > cand)
+                    list.add(u, w, cand);
+            }
+        }
+    }
+
+    /** Work done on each of a set of nodes in parallel. */
+    private static interface NodeTask {
+        public void run(int index, WitnessSearch ws);
+    }
+
+    /** Run {@code task} on indices {@code 0 .. count-1} on {@link #pool}. */
+    private void parallelFor(final int count, final NodeTask task) {
+        pool.invoke(new RangeAction(0, count, task));
+    }
+
+    private class RangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+        private final NodeTask task;
+
+        RangeAction(int from, int to, NodeTask task) {
+            this.from = from;
+            this.to = to;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= 64) {
+                WitnessSearch ws = searches.get();
+                for(int k = from; k < to; ++k)
+                    task.run(k, ws);
+            }
+            else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RangeAction(from, mid, task), new RangeAction(mid, to, task));
+            }
+        }
+    }
+
+    private void contract() {
+        final int[] priority = new int[n];
+        final int[] deleted = new int[n];
+        final boolean[] inRound = new boolean[n];
+        final int[] remaining = new int[n];
+        for(int v=0; v < n; ++v)
+            remaining[v] = v;
+        int nRemaining = n;
+        final int[] batch = new int[n];
+
+        parallelFor(n, new NodeTask() {
+            public void run(int v, WitnessSearch ws) {
+                priority[v] = importance(v, ws, deleted);
+            }
+        });
+
+        int nextRank = 0;
+        int[] seen = new int[n];
+        int round = 0;
+        while(nRemaining > 0) {
+            ++round;
+            // contract every node which is less important than all of its remaining neighbors
+            int nBatch = 0;
+            for(int k=0; k < nRemaining; ++k) {
+                int v = remaining[k];
+                if(isLocalMinimum(v, priority))
+                    batch[nBatch++] = v;
+            }
+            for(int k=0; k < nBatch; ++k)
+                inRound[batch[k]] = true;
+            final ShortcutList[] found = new ShortcutList[nBatch];
+            parallelFor(nBatch, new NodeTask() {
+                public void run(int k, WitnessSearch ws) {
+                    found[k] = new ShortcutList();
+                    findShortcuts(batch[k], ws, inRound, found[k]);
+                }
+            });
+            for(int k=0; k < nBatch; ++k) {
+                int v = batch[k];
+                rank[v] = nextRank;
+                order[nextRank++] = v;
+                inRound[v] = false;
+                // the edges of v to uncontracted nodes are now its upward edges, and leave the remaining graph
+                EdgeList l = out[v];
+                for(int e=0; e < l.upCount; ++e)
+                    in[l.nodes[e]].removeUp(v);
+                l = in[v];
+                for(int e=0; e < l.upCount; ++e)
+                    out[l.nodes[e]].removeUp(v);
+            }
+            for(int k=0; k < nBatch; ++k) {
+                ShortcutList l = found[k];
+                for(int s=0; s < l.size; ++s)
+                    addShortcut(l.from[s], l.to[s], l.weights[s], batch[k]);
+            }
+
+            // neighbors of contracted nodes have fewer edges and more contracted neighbors
+            int nAffected = 0;
+            final int[] affected = new int[countNeighbors(batch, nBatch)];
+            for(int k=0; k < nBatch; ++k) {
+                int v = batch[k];
+                for(EdgeList l: new EdgeList[]{out[v], in[v]}) {
+                    for(int e=0; e < l.upCount; ++e) {
+                        int x = l.nodes[e];
+                        deleted[x]++;
+                        if(seen[x] != round) {
+                            seen[x] = round;
+                            affected[nAffected++] = x;
+                        }
+                    }
+                }
+            }
+            parallelFor(nAffected, new NodeTask() {
+                public void run(int k, WitnessSearch ws) {
+                    int x = affected[k];
+                    priority[x] = importance(x, ws, deleted);
+                }
+            });
+
+            int kept = 0;
+            for(int k=0; k < nRemaining; ++k)
+                if(rank[remaining[k]] == Integer.MAX_VALUE)
+                    remaining[kept++] = remaining[k];
+            nRemaining = kept;
+        }
+    }
+
+    private int countNeighbors(int[] batch, int nBatch) {
+        int c = 0;
+        for(int k=0; k < nBatch; ++k)
+            c += out[batch[k]].upCount + in[batch[k]].upCount;
+        return c;
+    }
+
+    /** Edge difference of contracting {@code v} plus its number of contracted neighbors. */
+    private int importance(int v, WitnessSearch ws, int[] deleted) {
+        findShortcuts(v, ws, null, ws.shortcuts);
+        return ws.shortcuts.size - out[v].upCount - in[v].upCount + deleted[v];
+    }
+
+    private boolean isLocalMinimum(int v, int[] priority) {
+        for(EdgeList l: new EdgeList[]{out[v], in[v]}) {
+            for(int k=0; k < l.upCount; ++k) {
+                int x = l.nodes[k];
+                if(priority[x] < priority[v] || (priority[x] == priority[v] && x < v))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /** Bring the weights of the hierarchy up to date with the graph, keeping the contraction order.
+
+        Every edge gets its graph weight (infinity for shortcuts and broken edges), edges added to the graph
+        are added to the hierarchy, and then nodes are visited in contraction order: for each pair of more
+        important neighbors {@code u}, {@code w} of node {@code v}, the edge {@code u -> w} is lowered to the
+        length of {@code u -> v -> w}, or, if there is no such edge, a witness search decides whether a new
+        shortcut is needed. */
+    synchronized public void customize() {
+        synchronized(graph) {
+            if(graph.size() != n)
+                throw new IllegalStateException("graph has " + graph.size() + " nodes, but the hierarchy has " + n);
+            for(int u=0; u < n; ++u) {
+                EdgeList l = out[u];
+                for(int k=0; k < l.size; ++k) {
+                    int w = l.nodes[k];
+                    double orig = graph.hasEdge(u, w) ? graph.getWeight(u, w) : Double.POSITIVE_INFINITY;
+                    setEdge(u, k, w, orig, orig, -1);
+                }
+            }
+            for(int u=0; u < n; ++u) {
+                final int src = u;
+                graph.forEachSucc(u, new IntDoubleConsumer() {
+                    public void accept(int v, double w) {
+                        if(v != src && out[src].find(v) < 0)
+                            addEdge(src, v, w, w, -1);
+                    }
+                });
+            }
+        }
+
+        WitnessSearch ws = searches.get();
+        int[] missing = new int[4];
+        double[] missingCost = new double[4];
+        for(int r=0; r < n; ++r) {
+            int v = order[r];
+            EdgeList inL = in[v], outL = out[v];
+            for(int i=0; i < inL.upCount; ++i) {
+                int u = inL.nodes[i];
+                double wu = inL.weights[i];
+                if(Double.isInfinite(wu))
+                    continue;
+                int nMissing = 0;
+                double maxCost = 0;
+                for(int o=0; o < outL.upCount; ++o) {
+                    int w = outL.nodes[o];
+                    double cand = wu + outL.weights[o];
+                    if(w == u || Double.isInfinite(cand))
+                        continue;
+                    int k = out[u].find(w);
+                    if(k >= 0) {
+                        if(cand < out[u].weights[k])
+                            setEdge(u, k, w, cand, out[u].origs[k], v);
+                    }
+                    else {
+                        if(nMissing == missing.length) {
+                            missing = Arrays.copyOf(missing, 2 * nMissing);
+                            missingCost = Arrays.copyOf(missingCost, 2 * nMissing);
+                        }
+                        missing[nMissing] = w;
+                        missingCost[nMissing++] = cand;
+                        maxCost = Math.max(maxCost, cand);
+                    }
+                }
+                if(nMissing == 0)
+                    continue;
+                ws.run(u, v, maxCost, r, null, false);
+                for(int m=0; m < nMissing; ++m) {
+                    int w = missing[m];
+                    if(ws.distanceTo(w) > missingCost[m])
+                        addShortcut(u, w, missingCost[m], v);
+                }
+            }
+        }
+    }
+
+    /** Create a query engine. Each thread making queries needs its own. */
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /** Length of the shortest path from {@code s} to {@code t}, or infinity if there is none. */
+    synchronized public double distance(int s, int t) {
+        if(query == null)
+            query = new Query();
+        return query.distance(s, t);
+    }
+    /** Nodes of a shortest path from {@code s} to {@code t}, or an empty list if there is none. */
+    synchronized public List<Integer> getPath(int s, int t) {
+        if(query == null)
+            query = new Query();
+        return query.getPath(s, t);
+    }
+
+    /** Bidirectional search over the hierarchy, with state reused across queries.
+        Queries must not run at the same time as {@link ContractionHierarchy#customize}. */
+    public class Query {
+        private final double[] distF = new double[n], distB = new double[n];
+        private final int[] stampF = new int[n], stampB = new int[n];
+        private final int[] parentF = new int[n], parentB = new int[n];
+        private final IndexedHeap heapF = new IndexedHeap(n), heapB = new IndexedHeap(n);
+        private int current;
+        private double best;
+        /** Node where the best path found by the last search turns from upward to downward. */
+        private int meet;
+
+        private Query() {}
+
+        /** Length of the shortest path from {@code s} to {@code t}, or infinity if there is none. */
+        public double distance(int s, int t) {
+            search(s, t);
+            return best;
+        }
+
+        /** Nodes of a shortest path from {@code s} to {@code t}, or an empty list if there is none. */
+        public List<Integer> getPath(int s, int t) {
+            search(s, t);
+            List<Integer> path = new ArrayList<Integer>();
+            if(meet < 0)
+                return path;
+            List<Integer> top = new ArrayList<Integer>();
+            for(int u = meet; u != -1; u = parentF[u])
+                top.add(u);
+            Collections.reverse(top);
+            for(int u = parentB[meet]; u != -1; u = parentB[u])
+                top.add(u);
+            path.add(s);
+            for(int k=0; k+1 < top.size(); ++k)
+                unpack(top.get(k), top.get(k+1), path);
+            return path;
+        }
+
+        private void search(int s, int t) {
+            if(++current == Integer.MAX_VALUE) {
+                Arrays.fill(stampF, 0);
+                Arrays.fill(stampB, 0);
+                current = 1;
+            }
+            heapF.clear();
+            heapB.clear();
+            distF[s] = 0;
+            stampF[s] = current;
+            parentF[s] = -1;
+            heapF.push(s, 0);
+            distB[t] = 0;
+            stampB[t] = current;
+            parentB[t] = -1;
+            heapB.push(t, 0);
+            best = Double.POSITIVE_INFINITY;
+            meet = -1;
+            boolean doneF = false, doneB = false;
+            while(!(doneF && doneB)) {
+                if(!doneF) {
+                    if(heapF.isEmpty() || heapF.topPriority() >= best)
+                        doneF = true;
+                    else
+                        step(heapF, distF, stampF, parentF, stampB, distB, out, in);
+                }
+                if(!doneB) {
+                    if(heapB.isEmpty() || heapB.topPriority() >= best)
+                        doneB = true;
+                    else
+                        step(heapB, distB, stampB, parentB, stampF, distF, in, out);
+                }
+            }
+        }
+
+        /** Settle one node of a search which relaxes the upward part of {@code edges}. A node is stalled
+            (its edges aren't relaxed) if a more important node reaches it by a shorter path through {@code back}. */
+        private void step(IndexedHeap heap, double[] dist, int[] stamp, int[] parent,
+                int[] otherStamp, double[] otherDist, EdgeList[] edges, EdgeList[] back) {
+            int u = heap.pop();
+            if(otherStamp[u] == current && dist[u] + otherDist[u] < best) {
+                best = dist[u] + otherDist[u];
+                meet = u;
+            }
+            EdgeList b = back[u];
+            for(int k=0; k < b.upCount; ++k) {
+                int x = b.nodes[k];
+                if(stamp[x] == current && dist[x] + b.weights[k] < dist[u])
+                    return;
+            }
+            EdgeList l = edges[u];
+            for(int k=0; k < l.upCount; ++k) {
+                int v = l.nodes[k];
+                double d = dist[u] + l.weights[k];
+                if(stamp[v] != current || d < dist[v]) {
+                    stamp[v] = current;
+                    dist[v] = d;
+                    parent[v] = u;
+                    heap.push(v, d);
+                }
+            }
+        }
+    }
+
+    /** Append to {@code path} the nodes after {@code u} on the graph path which edge {@code u -> w} stands for. */
+    private void unpack(int u, int w, List<Integer> path) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = u;
+        stack[top++] = w;
+        while(top > 0) {
+            int b = stack[--top], a = stack[--top];
+            int mid = out[a].mids[out[a].find(b)];
+            if(mid < 0) {
+                path.add(b);
+            }
+            else {
+                if(top + 4 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                // a -> mid is unpacked first, so it goes on top
+                stack[top++] = mid;
+                stack[top++] = b;
+                stack[top++] = a;
+                stack[top++] = mid;
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package graph;
+
+import java.util.*;
+import static java.util.Arrays.binarySearch;
+
+import java.io.IOException;
+
+import graph.AbstractGraph;
+import graph.GenGraph;
+import util.CmdUtil;
+import util.IntDoubleConsumer;
+
+/** A directed graph stored in compressed sparse row (CSR) form.
+
+    Edges leaving node {@code u} are {@code succTargets[succOffsets[u] .. succOffsets[u+1]-1]}
+    and their weights are stored at the same positions in {@code succWeights}.
+    Predecessors are stored the same way in {@code predOffsets}, {@code predTargets} and {@code predWeights}.
+    Targets within a row are sorted, so edges can be looked up by binary search.
+
+    The topology is fixed once the graph is built, but edge weights can still be changed
+    using {@link #update(int, int, double)}. An edge whose weight is
+    {@linkplain Double#POSITIVE_INFINITY infinity} is treated as broken.
+*/
+public class CsrGraph extends AbstractGraph
+{
+    private int _size;
+    private int[] succOffsets, succTargets;
+    private double[] succWeights;
+    private int[] predOffsets, predTargets;
+    private double[] predWeights;
+
+    public int size() {
+        return _size;
+    }
+    /** Number of edges (including broken ones) stored in the graph. */
+    public int edgeCount() {
+        return succTargets.length;
+    }
+
+    /** Build a graph from an unsorted succ-side CSR layout. The arrays are owned by the new graph.
+
+        If an edge occurs more than once in a row, the occurrence stored last is kept. */
+    private CsrGraph(int n, int[] offsets, int[] targets, double[] weights) {
+        _size = n;
+        int m = targets.length;
+        // Transposing a CSR layout yields rows sorted by source.
+        // Transposing twice therefore sorts both directions in O(n + m).
+        // Transposing is stable, so duplicate edges stay in their original order.
+        predOffsets = new int[n + 1];
+        predTargets = new int[m];
+        predWeights = new double[m];
+        transpose(n, offsets, targets, weights, predOffsets, predTargets, predWeights);
+        succOffsets = new int[n + 1];
+        succTargets = new int[m];
+        succWeights = new double[m];
+        transpose(n, predOffsets, predTargets, predWeights, succOffsets, succTargets, succWeights);
+        if(removeDuplicates()) {
+            m = succTargets.length;
+            predOffsets = new int[n + 1];
+            predTargets = new int[m];
+            predWeights = new double[m];
+            transpose(n, succOffsets, succTargets, succWeights, predOffsets, predTargets, predWeights);
+        }
+    }
+
+    /** Remove repeated targets from the sorted succ rows, keeping the last weight of each.
+        Return whether anything was removed. The pred arrays are not updated. */
+    private boolean removeDuplicates() {
+        int k = 0;
+        for(int u=0; u < _size; ++u) {
+            int lo = succOffsets[u], hi = succOffsets[u + 1];
+            succOffsets[u] = k;
+            for(int p = lo; p < hi; ++p) {
+                if(p + 1 < hi && succTargets[p + 1] == succTargets[p])
+                    continue;
+                succTargets[k] = succTargets[p];
+                succWeights[k] = succWeights[p];
+                k++;
+            }
+        }
+        if(k == succTargets.length)
+            return false;
+        succOffsets[_size] = k;
+        succTargets = Arrays.copyOf(succTargets, k);
+        succWeights = Arrays.copyOf(succWeights, k);
+        return true;
+    }
+
+    private static void transpose(int n, int[] offsets, int[] targets, double[] weights,
+        int[] toffsets, int[] ttargets, double[] tweights) {
+        for(int k=0; k < targets.length; ++k)
+            toffsets[targets[k] + 1]++;
+        for(int u=0; u < n; ++u)
+            toffsets[u + 1] += toffsets[u];
+        int[] pos = Arrays.copyOf(toffsets, n);
+        for(int u=0; u < n; ++u) {
+            for(int k = offsets[u]; k < offsets[u + 1]; ++k) {
+                int p = pos[targets[k]]++;
+                ttargets[p] = u;
+                tweights[p] = weights[k];
+            }
+        }
+    }
+
+    /** Create a graph from an edge list.
+        @param n Size of graph.
+        @param edges Edge list. If an edge occurs more than once, the last weight is used.
+        @param symmetric Whether reverse of all edges should also be added to make the graph symmetric. */
+    public CsrGraph(int n, Edge[] edges, boolean symmetric) {
+        this(new GenGraph(n, edges, symmetric));
+    }
+
+    /** Convert any {@link AbstractGraph} to a {@link CsrGraph}. */
+    public CsrGraph(AbstractGraph graph) {
+        this(fromGraph(graph));
+    }
+    private CsrGraph(CsrGraph graph) {
+        this._size = graph._size;
+        this.succOffsets = graph.succOffsets;
+        this.succTargets = graph.succTargets;
+        this.succWeights = graph.succWeights;
+        this.predOffsets = graph.predOffsets;
+        this.predTargets = graph.predTargets;
+        this.predWeights = graph.predWeights;
+    }
+    private static CsrGraph fromGraph(AbstractGraph graph) {
+        synchronized(graph) {
+            int n = graph.size();
+            int[] offsets = new int[n + 1];
+            for(int u=0; u < n; ++u)
+                offsets[u + 1] = offsets[u] + graph.getSuccs(u).size();
+            int[] targets = new int[offsets[n]];
+            double[] weights = new double[offsets[n]];
+            int k = 0;
+            for(int u=0; u < n; ++u) {
+                for(Map.Entry<Integer, Double> entry: graph.getSuccs(u).entrySet()) {
+                    targets[k] = entry.getKey();
+                    weights[k] = entry.getValue();
+                    k++;
+                }
+            }
+            return new CsrGraph(n, offsets, targets, weights);
+        }
+    }
+
+    /** Load a graph from an {@link EdgeListFile} straight into CSR arrays,
+        without building a {@link GenGraph} first.
+        @param symmetric Whether reverse of all edges should also be added to make the graph symmetric. */
+    public static CsrGraph readBinary(String path, final boolean symmetric) throws IOException {
+        EdgeListFile file = new EdgeListFile(path);
+        int n = file.size();
+        long m = file.edgeCount() * (symmetric ? 2 : 1);
+        if(m > Integer.MAX_VALUE - 8)
+            throw new IOException(path + ": too many edges for a CsrGraph");
+        final int[] offsets = new int[n + 1];
+        file.forEachEdge(new EdgeListFile.EdgeVisitor() {
+            @Override
+            public void accept(int u, int v, double w) {
+                offsets[u + 1]++;
+                if(symmetric)
+                    offsets[v + 1]++;
+            }
+        });
+        for(int u=0; u < n; ++u)
+            offsets[u + 1] += offsets[u];
+        final int[] pos = Arrays.copyOf(offsets, n);
+        final int[] targets = new int[(int)m];
+        final double[] weights = new double[(int)m];
+        file.forEachEdge(new EdgeListFile.EdgeVisitor() {
+            @Override
+            public void accept(int u, int v, double w) {
+                int p = pos[u]++;
+                targets[p] = v;
+                weights[p] = w;
+                if(symmetric) {
+                    p = pos[v]++;
+                    targets[p] = u;
+                    weights[p] = w;
+                }
+            }
+        });
+        return new CsrGraph(n, offsets, targets, weights);
+    }
+
+    /** Position of edge {@code (src, dst)} in the succ arrays, or a negative number if there is no such edge. */
+    private int succIndex(int src, int dst) {
+        if(src < 0 || src >= _size)
+            return -1;
+        int lo = succOffsets[src], hi = succOffsets[src + 1];
+        int k = binarySearch(succTargets, lo, hi, dst);
+        return k >= lo ? k : -1;
+    }
+    /** Position of edge {@code (src, dst)} in the pred arrays, or a negative number if there is no such edge. */
+    private int predIndex(int src, int dst) {
+        if(dst < 0 || dst >= _size)
+            return -1;
+        int lo = predOffsets[dst], hi = predOffsets[dst + 1];
+        int k = binarySearch(predTargets, lo, hi, src);
+        return k >= lo ? k : -1;
+    }
+
+    private static Map<Integer, Double> rowMap(int[] offsets, int[] targets, double[] weights, int u) {
+        int lo = offsets[u], hi = offsets[u + 1];
+        Map<Integer, Double> hm = new HashMap<Integer, Double>(2 * (hi - lo));
+        for(int k = lo; k < hi; ++k) {
+            double w = weights[k];
+            if(w != Double.POSITIVE_INFINITY)
+                hm.put(targets[k], w);
+        }
+        return hm;
+    }
+
+    public Map<Integer, Double> getPredsCopy(int node) {
+        return rowMap(predOffsets, predTargets, predWeights, node);
+    }
+    public Map<Integer, Double> getSuccsCopy(int node) {
+        return rowMap(succOffsets, succTargets, succWeights, node);
+    }
+    public Map<Integer, Double> getPreds(int node) {return getPredsCopy(node);}
+    public Map<Integer, Double> getSuccs(int node) {return getSuccsCopy(node);}
+
+    private static void forEachInRow(int[] offsets, int[] targets, double[] weights, int u,
+        IntDoubleConsumer visitor) {
+        for(int k = offsets[u], end = offsets[u + 1]; k < end; ++k) {
+            double w = weights[k];
+            if(w != Double.POSITIVE_INFINITY)
+                visitor.accept(targets[k], w);
+        }
+    }
+    private static int rowDegree(int[] offsets, double[] weights, int u) {
+        int deg = 0;
+        for(int k = offsets[u], end = offsets[u + 1]; k < end; ++k)
+            if(weights[k] != Double.POSITIVE_INFINITY)
+                deg++;
+        return deg;
+    }
+
+    public void forEachSucc(int node, IntDoubleConsumer visitor) {
+        forEachInRow(succOffsets, succTargets, succWeights, node, visitor);
+    }
+    public void forEachPred(int node, IntDoubleConsumer visitor) {
+        forEachInRow(predOffsets, predTargets, predWeights, node, visitor);
+    }
+    public int getSuccDegree(int node) {
+        return rowDegree(succOffsets, succWeights, node);
+    }
+    public int getPredDegree(int node) {
+        return rowDegree(predOffsets, predWeights, node);
+    }
+
+    /** Index of the first slot of {@code node}'s successor row. Slots {@code getSuccBegin(u)} to
+        {@code getSuccBegin(u+1)-1} belong to {@code u}, including slots of broken edges. */
+    public int getSuccBegin(int node) {return succOffsets[node];}
+    /** Successor stored in slot {@code k}. */
+    public int getSuccAt(int k) {return succTargets[k];}
+    /** Weight of the edge stored in successor slot {@code k}. */
+    public double getSuccWeightAt(int k) {return succWeights[k];}
+    /** Index of the first slot of {@code node}'s predecessor row. */
+    public int getPredBegin(int node) {return predOffsets[node];}
+    /** Predecessor stored in slot {@code k}. */
+    public int getPredAt(int k) {return predTargets[k];}
+    /** Weight of the edge stored in predecessor slot {@code k}. */
+    public double getPredWeightAt(int k) {return predWeights[k];}
+
+    public Set<Integer> getNbrs(int node) {
+        Set<Integer> nbrs = new HashSet<Integer>(getSuccsCopy(node).keySet());
+        nbrs.addAll(getPredsCopy(node).keySet());
+        return nbrs;
+    }
+
+    public boolean hasEdge(int src, int dst) {
+        int k = succIndex(src, dst);
+        return k >= 0 && succWeights[k] != Double.POSITIVE_INFINITY;
+    }
+
+    public double getWeight(int src, int dst) {
+        int k = succIndex(src, dst);
+        return k >= 0 ? succWeights[k] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Set as {@code w} the weight of edge from {@code u} to {@code v}.
+        @throws IllegalArgumentException if the edge is not part of the graph's topology. */
+    synchronized public void update(int u, int v, double w) {
+        int ks = succIndex(u, v);
+        int kp = predIndex(u, v);
+        if(ks < 0 || kp < 0)
+            throw new IllegalArgumentException("edge (" + u + ", " + v + ") is not in CsrGraph");
+        succWeights[ks] = w;
+        predWeights[kp] = w;
+    }
+    /** Set as {@code w} the weight of edge from {@code u} to {@code v}.
+        If {@code symmetric} is true, the weight of edge from {@code v} to {@code u} is also updated.*/
+    synchronized public void update(int u, int v, double w, boolean symmetric) {
+        update(u, v, w);
+        if(symmetric)
+            update(v, u, w);
+    }
+    /** Break the edge from u to v. The edge remains part of the topology and can be restored by {@link #update}. */
+    synchronized public void breakEdge(int u, int v) {
+        if(succIndex(u, v) >= 0)
+            update(u, v, Double.POSITIVE_INFINITY);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CsrGraph(" + _size + ", [");
+        for(int u=0; u < _size; ++u) {
+            if(u > 0)
+                sb.append(", ");
+            sb.append(getSuccsCopy(u));
+        }
+        return sb.append("])").toString();
+    }
+
+    /** Read a graph from a file and print it's string representation. */
+    public static void main(String[] args) throws IOException
+    {
+        String usage = "usage: java graph.CsrGraph [file]";
+        CsrGraph graph = new GenGraph(CmdUtil.getBrFromArgs(args, usage, true)).toCsrGraph();
+        System.out.println(graph.toString());
+    }
+}
@@ -0,0 +1,195 @@
+package graph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import graph.AbstractGraph;
+import util.IntDoubleConsumer;
+
+/** A binary edge-list file, which can be loaded much faster than the text format
+    read by {@link GenGraph#GenGraph(BufferedReader, boolean)}.
+
+    File format (all numbers are big-endian):
+    <ul>
+    <li>{@code int} magic number {@link #MAGIC}.</li>
+    <li>{@code int} format version {@link #VERSION}.</li>
+    <li>{@code int} number of nodes.</li>
+    <li>{@code int} reserved, always 0.</li>
+    <li>{@code long} number of edges.</li>
+    <li>one {@link #RECORD_SIZE}-byte record per edge: {@code int} source, {@code int} destination,
+        {@code double} weight.</li>
+    </ul>
+
+    Like the text format, the file doesn't say whether the graph is symmetric;
+    that is decided by the loader.
+*/
+public class EdgeListFile
+{
+    /** Magic number at the start of an edge-list file ("PFE1"). */
+    public static final int MAGIC = 0x50464531;
+    public static final int VERSION = 1;
+    /** Size of the header in bytes. */
+    public static final int HEADER_SIZE = 24;
+    /** Size of an edge record in bytes. */
+    public static final int RECORD_SIZE = 16;
+    /** Number of records mapped at a time. */
+    private static final int RECORDS_PER_REGION = 1 << 26;
+
+    /** Visitor for edges of an edge-list file. */
+    public static interface EdgeVisitor {
+        public void accept(int src, int dst, double w);
+    }
+
+    private String path;
+    private int n;
+    private long m;
+
+    /** Open an edge-list file and read its header. */
+    public EdgeListFile(String path) throws IOException {
+        this.path = path;
+        try(RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            FileChannel ch = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if(ch.read(header, 0) != HEADER_SIZE)
+                throw new IOException(path + ": too short for an edge-list header");
+            header.flip();
+            if(header.getInt() != MAGIC)
+                throw new IOException(path + ": not an edge-list file");
+            int version = header.getInt();
+            if(version != VERSION)
+                throw new IOException(path + ": unsupported edge-list version " + version);
+            n = header.getInt();
+            header.getInt();
+            m = header.getLong();
+            if(n < 0 || m < 0 || ch.size() < HEADER_SIZE + m * RECORD_SIZE)
+                throw new IOException(path + ": edge-list file is corrupt or truncated");
+        }
+    }
+
+    /** Number of nodes. */
+    public int size() {return n;}
+    /** Number of edge records. */
+    public long edgeCount() {return m;}
+
+    /** Call {@code visitor} on every edge record, in file order.
+        Records are read from memory-mapped regions of the file. */
+    public void forEachEdge(EdgeVisitor visitor) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            FileChannel ch = raf.getChannel();
+            for(long start = 0; start < m; start += RECORDS_PER_REGION) {
+                int count = (int)Math.min(RECORDS_PER_REGION, m - start);
+                ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + start * RECORD_SIZE, (long)count * RECORD_SIZE);
+                for(int k=0, off=0; k < count; ++k, off += RECORD_SIZE) {
+                    int src = buf.getInt(off);
+                    int dst = buf.getInt(off + 4);
+                    double w = buf.getDouble(off + 8);
+                    if(src < 0 || src >= n || dst < 0 || dst >= n)
+                        throw new IOException(path + ": edge (" + src + ", " + dst + ") out of range");
+                    visitor.accept(src, dst, w);
+                }
+            }
+        }
+    }
+
+    /** Writes edge records to a file, buffering them in a {@link ByteBuffer}. */
+    private static class Writer implements AutoCloseable {
+        private RandomAccessFile raf;
+        private FileChannel ch;
+        private ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE << 12);
+        private long pos = HEADER_SIZE;
+        private long m = 0;
+
+        Writer(String path) throws IOException {
+            raf = new RandomAccessFile(path, "rw");
+            raf.setLength(0);
+            ch = raf.getChannel();
+        }
+        void add(int src, int dst, double w) throws IOException {
+            if(!buf.hasRemaining())
+                flush();
+            buf.putInt(src).putInt(dst).putDouble(w);
+            m++;
+        }
+        private void flush() throws IOException {
+            buf.flip();
+            while(buf.hasRemaining())
+                pos += ch.write(buf, pos);
+            buf.clear();
+        }
+        void finish(int n) throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0).putLong(m).flip();
+            while(header.hasRemaining())
+                ch.write(header, header.position());
+        }
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /** Write every edge of {@code graph} to an edge-list file. */
+    public static void write(AbstractGraph graph, String path) throws IOException {
+        synchronized(graph) {
+            try(Writer writer = new Writer(path)) {
+                int n = graph.size();
+                final IOException[] error = new IOException[1];
+                for(int u=0; u < n; ++u) {
+                    final int src = u;
+                    graph.forEachSucc(u, new IntDoubleConsumer() {
+                        @Override
+                        public void accept(int v, double w) {
+                            try {
+                                if(error[0] == null)
+                                    writer.add(src, v, w);
+                            }
+                            catch(IOException e) {
+                                error[0] = e;
+                            }
+                        }
+                    });
+                    if(error[0] != null)
+                        throw error[0];
+                }
+                writer.finish(n);
+            }
+        }
+    }
+
+    /** Convert a text edge list (in the format read by {@link GenGraph#GenGraph(BufferedReader, boolean)})
+        to an edge-list file, one line at a time. */
+    public static void convert(BufferedReader br, String path) throws IOException {
+        try(Writer writer = new Writer(path)) {
+            int n = Integer.parseInt(br.readLine().trim());
+            String s;
+            String[] words;
+            while((s = br.readLine()) != null) {
+                if(!s.equals("")) {
+                    words = s.split(" ");
+                    writer.add(Integer.parseInt(words[0]), Integer.parseInt(words[1]),
+                        Double.parseDouble(words[2]));
+                }
+            }
+            writer.finish(n);
+        }
+    }
+
+    /** Convert a text edge list file to an edge-list file. */
+    public static void main(String[] args) throws IOException {
+        String usage = "usage: java graph.EdgeListFile <text graph file> <output edge-list file>";
+        if(args.length != 2) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        try(BufferedReader br = new BufferedReader(new FileReader(args[0]))) {
+            convert(br, args[1]);
+        }
+        EdgeListFile file = new EdgeListFile(args[1]);
+        System.out.println("Wrote " + file.size() + " nodes and " + file.edgeCount() + " edges");
+    }
+}
@@ -1,6 +1,7 @@
 package graph;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import static java.util.Collections.unmodifiableMap;
 
 import java.io.BufferedReader;
@@ -11,6 +12,7 @@ import java.io.IOException;
 import graph.Edge;
 import graph.AbstractGraph;
 import util.CmdUtil;
+import util.IntDoubleConsumer;
 
 /** A directed graph represented using predecessor and succesor maps.
 Any {@link AbstractGraph} can be represented as a {@link GenGraph}. */
@@ -35,6 +37,20 @@ public class GenGraph extends AbstractGraph
     synchronized public Map<Integer, Double> getSuccsCopy(int node) {
         return new HashMap<Integer, Double>(succs.get(node));
     }
+    synchronized public void forEachSucc(int node, IntDoubleConsumer visitor) {
+        for(Map.Entry<Integer, Double> entry: succs.get(node).entrySet())
+            visitor.accept(entry.getKey(), entry.getValue());
+    }
+    synchronized public void forEachPred(int node, IntDoubleConsumer visitor) {
+        for(Map.Entry<Integer, Double> entry: preds.get(node).entrySet())
+            visitor.accept(entry.getKey(), entry.getValue());
+    }
+    synchronized public int getSuccDegree(int node) {
+        return succs.get(node).size();
+    }
+    synchronized public int getPredDegree(int node) {
+        return preds.get(node).size();
+    }
     synchronized public Set<Integer> getNbrs(int node) {
         Set<Integer> nbrs = new HashSet<Integer>(succs.get(node).keySet());
         nbrs.addAll(preds.get(node).keySet());
@@ -81,6 +97,21 @@ public class GenGraph extends AbstractGraph
             succs.add(new HashMap<Integer, Double>());
         }
     }
+    /** Create an empty graph whose maps are sized for the given degrees. */
+    private GenGraph(int n, int[] outDeg, int[] inDeg) {
+        _size = n;
+        preds = new ArrayList<HashMap<Integer, Double>>(n);
+        succs = new ArrayList<HashMap<Integer, Double>>(n);
+        for(int i=0; i<n; ++i) {
+            preds.add(new HashMap<Integer, Double>(inDeg[i] * 4 / 3 + 1));
+            succs.add(new HashMap<Integer, Double>(outDeg[i] * 4 / 3 + 1));
+        }
+    }
+    /** Add an edge without locking. Only for use while the graph is being constructed. */
+    private void put(int u, int v, double w) {
+        succs.get(u).put(v, w);
+        preds.get(v).put(u, w);
+    }
     /** Copy-constructor (sort of). */
     public GenGraph(AbstractGraph graph2) {
         this(graph2.size());
@@ -98,10 +129,19 @@ public class GenGraph extends AbstractGraph
         return "GenGraph(" + _size + ", " + succs + ")";
     }
 
+    /** Add an isolated node and return its number, which is the old {@link #size}. */
+    synchronized public int addNode() {
+        preds.add(new HashMap<Integer, Double>());
+        succs.add(new HashMap<Integer, Double>());
+        return _size++;
+    }
+
     /** Set as {@code w} the weight of edge from {@code u} to {@code v}. */
     synchronized public void update(int u, int v, double w) {
         succs.get(u).put(v, w);
         preds.get(v).put(u, w);
+        if(journalSrc != null)
+            journal(u, v);
     }
     /** Set as {@code w} the weight of edge from {@code u} to {@code v}.
         If {@code symmetric} is true, the weight of edge from {@code v} to {@code u} is also updated.*/
@@ -125,6 +165,117 @@ public class GenGraph extends AbstractGraph
             preds.get(v).remove(u);
         }
         catch(NullPointerException e) {}
+        if(journalSrc != null)
+            journal(u, v);
+    }
+
+    /** Visitor for edges recorded in the change journal. */
+    public static interface ChangeVisitor {
+        public void accept(int u, int v);
+    }
+
+    /** Change journal: the edge changed by the update with version {@code journalBase + k}
+        goes from {@code journalSrc[k]} to {@code journalDst[k]}, for {@code journalStart <= k < journalLength}.
+        Null if the journal is off. */
+    private int[] journalSrc, journalDst;
+    private int journalStart, journalLength;
+    private long journalBase;
+    /** Version read by each reader of the journal, or -1 for readers which were closed. */
+    private long[] readerVersions = new long[0];
+
+    /** Number of updates recorded in the change journal. */
+    synchronized public long getVersion() {
+        return journalBase + journalLength;
+    }
+
+    /** Turn on the change journal, which records every later call to {@link #update} and
+        {@link #breakEdge}, and return the current version. Updates made before this call aren't recorded. */
+    synchronized public long startJournal() {
+        if(journalSrc == null) {
+            journalSrc = new int[16];
+            journalDst = new int[16];
+        }
+        return getVersion();
+    }
+
+    /** Turn on the change journal and register a reader of it which has read every update till now.
+        Return the reader's number, to be given to {@link #readChanges}. Entries are dropped from the journal
+        once every open reader has read them, so readers which are no longer used should be
+        {@linkplain #closeJournalReader closed}. */
+    synchronized public int openJournalReader() {
+        startJournal();
+        for(int r=0; r < readerVersions.length; ++r) {
+            if(readerVersions[r] < 0) {
+                readerVersions[r] = getVersion();
+                return r;
+            }
+        }
+        int r = readerVersions.length;
+        readerVersions = Arrays.copyOf(readerVersions, r + 1);
+        readerVersions[r] = getVersion();
+        return r;
+    }
+
+    /** Unregister a reader, so that it no longer keeps entries in the journal. */
+    synchronized public void closeJournalReader(int reader) {
+        checkReader(reader);
+        readerVersions[reader] = -1;
+        trimJournal();
+    }
+
+    private void checkReader(int reader) {
+        if(reader < 0 || reader >= readerVersions.length || readerVersions[reader] < 0)
+            throw new IllegalArgumentException("no open journal reader " + reader);
+    }
+
+    private void journal(int u, int v) {
+        if(journalLength == journalSrc.length) {
+            if(journalStart > 0) {
+                compactJournal();
+            }
+            else {
+                journalSrc = Arrays.copyOf(journalSrc, 2 * journalLength);
+                journalDst = Arrays.copyOf(journalDst, 2 * journalLength);
+            }
+        }
+        journalSrc[journalLength] = u;
+        journalDst[journalLength] = v;
+        journalLength++;
+    }
+
+    /** Call {@code visitor} on the edge changed by each update which {@code reader} hasn't read yet, oldest
+        first, mark them as read and return the current version. The same edge is visited once per update
+        to it. The cost is proportional to the number of updates visited; {@code visitor} may be null. */
+    synchronized public long readChanges(int reader, ChangeVisitor visitor) {
+        checkReader(reader);
+        if(visitor != null) {
+            for(int k = (int)(readerVersions[reader] - journalBase); k < journalLength; ++k)
+                visitor.accept(journalSrc[k], journalDst[k]);
+        }
+        readerVersions[reader] = getVersion();
+        trimJournal();
+        return getVersion();
+    }
+
+    /** Drop journal entries which every open reader has read. Entries are only moved once as many
+        entries can be dropped as are kept, so the cost is amortized over the updates. */
+    private void trimJournal() {
+        long version = getVersion();
+        for(long v: readerVersions)
+            if(v >= 0)
+                version = Math.min(version, v);
+        journalStart = (int)(version - journalBase);
+        if(journalStart > 0 && 2 * journalStart >= journalLength)
+            compactJournal();
+    }
+
+    private void compactJournal() {
+        int live = journalLength - journalStart;
+        System.arraycopy(journalSrc, journalStart, journalSrc, 0, live);
+        System.arraycopy(journalDst, journalStart, journalDst, 0, live);
+        journalBase += journalStart;
+        journalLength = live;
+        journalStart = 0;
     }
 
     /** Create a graph by reading edge list from a {@link BufferedReader}. */
@@ -155,6 +306,77 @@ public class GenGraph extends AbstractGraph
         this(br, true);
     }
 
+    /** Read a text edge list (the format read by {@link #GenGraph(BufferedReader, boolean)})
+        by parsing byte ranges of the file in parallel on {@code pool}.
+
+        Parsed edges are merged into the graph in file order, so repeated edges
+        end up with the same weight as with the sequential reader.
+        @param symmetric Whether reverse of all edges should also be added to make the graph symmetric. */
+    public static GenGraph readTextParallel(String path, boolean symmetric, ForkJoinPool pool)
+        throws IOException {
+        ParallelEdgeListReader reader = new ParallelEdgeListReader(path, pool);
+        int n = reader.size;
+        int[] outDeg = new int[n], inDeg = new int[n];
+        for(ParallelEdgeListReader.Chunk c: reader.chunks) {
+            for(int k=0; k < c.count; ++k) {
+                int u = c.src[k], v = c.dst[k];
+                if(u < 0 || u >= n || v < 0 || v >= n)
+                    throw new IOException(path + ": edge (" + u + ", " + v + ") out of range");
+                outDeg[u]++;
+                inDeg[v]++;
+                if(symmetric) {
+                    outDeg[v]++;
+                    inDeg[u]++;
+                }
+            }
+        }
+        GenGraph graph = new GenGraph(n, outDeg, inDeg);
+        for(ParallelEdgeListReader.Chunk c: reader.chunks) {
+            for(int k=0; k < c.count; ++k) {
+                graph.put(c.src[k], c.dst[k], c.w[k]);
+                if(symmetric)
+                    graph.put(c.dst[k], c.src[k], c.w[k]);
+            }
+        }
+        return graph;
+    }
+    /** Same as {@link #readTextParallel(String, boolean, ForkJoinPool)} using the common pool. */
+    public static GenGraph readTextParallel(String path, boolean symmetric) throws IOException {
+        return readTextParallel(path, symmetric, ForkJoinPool.commonPool());
+    }
+
+    /** Load a graph from an {@link EdgeListFile}.
+
+        The file is read twice: once to count degrees so that every map is allocated
+        at its final size, and once to insert the edges.
+        @param symmetric Whether reverse of all edges should also be added to make the graph symmetric. */
+    public static GenGraph readBinary(String path, final boolean symmetric) throws IOException {
+        EdgeListFile file = new EdgeListFile(path);
+        int n = file.size();
+        final int[] outDeg = new int[n], inDeg = new int[n];
+        file.forEachEdge(new EdgeListFile.EdgeVisitor() {
+            @Override
+            public void accept(int u, int v, double w) {
+                outDeg[u]++;
+                inDeg[v]++;
+                if(symmetric) {
+                    outDeg[v]++;
+                    inDeg[u]++;
+                }
+            }
+        });
+        final GenGraph graph = new GenGraph(n, outDeg, inDeg);
+        file.forEachEdge(new EdgeListFile.EdgeVisitor() {
+            @Override
+            public void accept(int u, int v, double w) {
+                graph.put(u, v, w);
+                if(symmetric)
+                    graph.put(v, u, w);
+            }
+        });
+        return graph;
+    }
+
     /** Read a graph from a file and print it's string representation. */
     public static void main(String[] args) throws IOException
     {
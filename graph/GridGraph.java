@@ -7,7 +7,9 @@ import static java.lang.Math.max;
 
 import graph.AbstractGraph;
 import util.CmdUtil;
+import util.IntDoubleConsumer;
 
+import java.lang.invoke.VarHandle;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -72,19 +74,129 @@ public class GridGraph extends AbstractGraph
         public abstract void run(int i, int j);
     }
 
+    /** Nodes are stored in chunks of {@code 2^CHUNK_BITS} consecutive node numbers.
+        Chunks can be shared between a graph, its {@linkplain #snapshot snapshots} and its copies.
+        A shared chunk is copied the first time it is written to. */
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
     private int rows, cols;
     private int _size;
-    private Node[] grid;
+    /** Type of each node, by chunk. */
+    private byte[][] typeChunks;
+    /** Occupancy of each node, by chunk. */
+    private short[][] occChunks;
+    /** Bitset whose bit {@code u} is set iff node {@code u} has type 1, by chunk.
+        When every node has type 0 or 1, this describes node types exactly. */
+    private long[][] bitChunks;
+    /** Whether each chunk may be referenced by another graph. Always true for a frozen graph. */
+    private boolean[] shared;
+    /** Whether this graph is an immutable snapshot. */
+    private boolean frozen;
+    /** Number of updates made to this graph. */
+    private long version;
+    /** Number of nodes whose type is neither 0 nor 1. */
+    private int nonBinaryTypes;
+    /** Number of nodes whose occupancy is not 1. */
+    private int nonUnitOccs;
+    /** Difference between node numbers of a node and each of its 8 neighbors. */
+    private int[] nbrOffset;
     private UpdateCallback updateCallback;
 
+    /** Shared {@link Node} instances for unit-occupancy nodes of small types.
+        Nodes are immutable, so {@link #getNode} can hand these out instead of allocating. */
+    private static final Node[] unitNodes = {new Node(0, 1), new Node(1, 1)};
+
+    private static Node nodeOf(int type, int occ) {
+        if(occ == 1 && type >= 0 && type < unitNodes.length)
+            return unitNodes[type];
+        return new Node(type, occ);
+    }
+
     /** Number of rows. */
     public int getRows() {return rows;}
     /** Number of columns. */
     public int getCols() {return cols;}
+
+    /** Octile distance, which is admissible as long as no node has occupancy less than 1. */
+    @Override
+    public Heuristic getHeuristic() {
+        return new OctileHeuristic(cols);
+    }
     /** Size of graph, which is rows &times; columns. */
     public int size() {return _size;}
-    public Node getNode(int i, int j) {return grid[i * cols + j];}
-    public Node getNode(int u) {return grid[u];}
+    /** Get a {@link Node} describing the cell at row {@code i} and column {@code j}.
+        The returned object is a snapshot; it does not change when the graph is updated. */
+    public Node getNode(int i, int j) {return getNode(i * cols + j);}
+    /** Get a {@link Node} describing node {@code u}.
+        The returned object is a snapshot; it does not change when the graph is updated. */
+    public Node getNode(int u) {return nodeOf(typeAt(u), occAt(u));}
+    /** Type of node {@code u}. Same as {@code getNode(u).getType()} but doesn't create a {@link Node}. */
+    public int getType(int u) {return typeAt(u);}
+    /** Occupancy of node {@code u}. Same as {@code getNode(u).getOcc()} but doesn't create a {@link Node}. */
+    public int getOcc(int u) {return occAt(u);}
+
+    private byte typeAt(int u) {return typeChunks[u >>> CHUNK_BITS][u & CHUNK_MASK];}
+    private short occAt(int u) {return occChunks[u >>> CHUNK_BITS][u & CHUNK_MASK];}
+    /** Word {@code w} of the type bitset. */
+    private long bitWord(int w) {return bitChunks[w >>> (CHUNK_BITS - 6)][w & (CHUNK_MASK >>> 6)];}
+
+    /** Number of updates made to this graph (or, for a snapshot, to the graph it was taken from). */
+    public long getVersion() {return version;}
+    /** Whether this graph is an immutable snapshot. */
+    public boolean isFrozen() {return frozen;}
+
+    /** Return an immutable snapshot of this graph.
+
+        The snapshot shares storage with this graph, so taking it only copies
+        one reference per {@value #CHUNK_SIZE} nodes. Later updates to this graph copy the chunk
+        they write to, so the snapshot never changes. Reads from a snapshot don't take any lock,
+        which lets planners and GUI threads work on a consistent view while the graph is being updated.
+        Calling {@link #update} on a snapshot throws {@link UnsupportedOperationException}. */
+    synchronized public GridGraph snapshot() {
+        if(frozen)
+            return this;
+        GridGraph snap = new GridGraph();
+        snap.shareFrom(this, true);
+        return snap;
+    }
+    /** Used by {@link #snapshot}. */
+    private GridGraph() {}
+
+    /** Make this graph share all chunks of {@code g}. The caller must hold {@code g}'s lock. */
+    private void shareFrom(GridGraph g, boolean frozen) {
+        if(rows != g.rows || cols != g.cols || typeChunks == null)
+            layout(g.rows, g.cols);
+        typeChunks = g.typeChunks.clone();
+        occChunks = g.occChunks.clone();
+        bitChunks = g.bitChunks.clone();
+        nonBinaryTypes = g.nonBinaryTypes;
+        nonUnitOccs = g.nonUnitOccs;
+        version = g.version;
+        this.frozen = frozen;
+        shared = new boolean[typeChunks.length];
+        Arrays.fill(shared, true);
+        if(!g.frozen)
+            Arrays.fill(g.shared, true);
+    }
+
+    /** Make chunk {@code c} safe to write to, copying it if it is shared. */
+    private void prepareWrite(int c) {
+        if(frozen)
+            throw new UnsupportedOperationException("GridGraph snapshots can't be updated");
+        if(shared[c]) {
+            byte[] t = typeChunks[c].clone();
+            short[] o = occChunks[c].clone();
+            long[] b = bitChunks[c].clone();
+            // readers which don't lock must not see the new chunks before their contents
+            VarHandle.releaseFence();
+            typeChunks[c] = t;
+            occChunks[c] = o;
+            bitChunks[c] = b;
+            shared[c] = false;
+        }
+    }
 
     public UpdateCallback getCallback() {
         return updateCallback;
@@ -94,14 +206,16 @@ public class GridGraph extends AbstractGraph
     }
 
     /** Squared distance between nodes, -1 if nodes are not adjacent, 0 if nodes are the same. */
-    synchronized public long norm(int src, int dst) {
-        int si = src / cols, sj = src % cols;
-        int di = dst / cols, dj = dst % cols;
-        long norm = (long)(si-di)*(si-di) + (long)(sj-dj)*(sj-dj);
-        if(grid[src].getType() == grid[dst].getType() && norm <= 2)
-            return norm;
-        else
-            return -1;
+    public long norm(int src, int dst) {
+        if(frozen)
+            return normOf(src, dst);
+        synchronized(this) {
+            return normOf(src, dst);
+        }
+    }
+    private long normOf(int src, int dst) {
+        long norm = GridRules.stepNorm(src, dst, cols);
+        return norm >= 0 && GridRules.joins(typeAt(src), typeAt(dst)) ? norm : -1;
     }
 
     /** Difference between row numbers. */
@@ -114,79 +228,197 @@ public class GridGraph extends AbstractGraph
     }
 
     public boolean hasEdge(int src, int dst) {
-        long nrm = norm(src, dst);
-        return nrm > 0 && nrm <= 2;
+        return GridRules.hasEdge(norm(src, dst));
     }
 
-    synchronized public double getWeight(int src, int dst) {
-        long nrm = norm(src, dst);
-        if(nrm <= 0)
-            return Double.POSITIVE_INFINITY;
-        else
-            return Math.sqrt(nrm) * max(grid[src].getOcc(), grid[dst].getOcc());
+    public double getWeight(int src, int dst) {
+        if(frozen)
+            return weightOf(src, dst);
+        synchronized(this) {
+            return weightOf(src, dst);
+        }
+    }
+    private double weightOf(int src, int dst) {
+        return GridRules.weight(normOf(src, dst), occAt(src), occAt(dst));
     }
 
     public String toString() {
         return "GridGraph(" + rows + ", " + cols + ")";
     }
 
-    synchronized public Map<Integer, Double> getPredsCopy(int u) {
-        Map<Integer, Double> hm = new HashMap<Integer, Double>(8);
-        int ui = u / cols, uj = u % cols;
-        int[] drows = {-1, 0, 1};
-        int[] dcols = drows;
-        for(int i=0; i < drows.length; ++i) {
-            int vi = ui + drows[i];
-            if(vi >= 0 && vi < rows) {
-                for(int j=0; j < dcols.length; ++j) {
-                    int vj = uj + dcols[j];
-                    int v = vi * cols + vj;
-                    if(vj >= 0 && vj < cols && (u != v)) {
-                        if(grid[u].getType() == grid[v].getType()) {
-                            long nrm = (long)(vi-ui)*(vi-ui) + (long)(vj-uj)*(vj-uj);
-                            double w = Math.sqrt(nrm) * max(grid[u].getOcc(), grid[v].getOcc());
-                            hm.put(v, w);
-                        }
-                    }
-                }
+    /** Whether every node has type 0 or 1, so that the type bitset describes the graph fully. */
+    public boolean isBinary() {return nonBinaryTypes == 0;}
+    /** Whether every node has occupancy 1, so that every edge weighs as much as its length. */
+    public boolean isUnitCost() {return nonUnitOccs == 0;}
+
+    /** Set the type of node {@code u}, keeping the type bitset and counters in sync. */
+    private void setType(int u, byte t) {
+        int c = u >>> CHUNK_BITS, k = u & CHUNK_MASK;
+        prepareWrite(c);
+        byte old = typeChunks[c][k];
+        if(old != 0 && old != 1)
+            nonBinaryTypes--;
+        if(t != 0 && t != 1)
+            nonBinaryTypes++;
+        typeChunks[c][k] = t;
+        if(t == 1)
+            bitChunks[c][k >>> 6] |= 1L << k;
+        else
+            bitChunks[c][k >>> 6] &= ~(1L << k);
+    }
+    /** Set the occupancy of node {@code u}, keeping counters in sync. */
+    private void setOcc(int u, short o) {
+        int c = u >>> CHUNK_BITS, k = u & CHUNK_MASK;
+        prepareWrite(c);
+        if(occChunks[c][k] != 1)
+            nonUnitOccs--;
+        if(o != 1)
+            nonUnitOccs++;
+        occChunks[c][k] = o;
+    }
+
+    /** Bits {@code p-1}, {@code p} and {@code p+1} of the type bitset as bits 0, 1 and 2.
+        Bits outside the grid read as 0. */
+    private int typeBits3(int p) {
+        int q = p - 1;
+        if(q < 0)
+            return (int)(bitWord(0) << 1) & 7;
+        int wi = q >>> 6, off = q & 63;
+        long w = bitWord(wi) >>> off;
+        if(off > 61 && wi + 1 < nWords)
+            w |= bitWord(wi + 1) << (64 - off);
+        return (int)w & 7;
+    }
+
+    /** Bitmask of directions from node {@code u} which lead to an adjacent node.
+        For binary grids this is computed from 3 reads of the type bitset, one per row,
+        which relies on nodes being joined when their types are equal ({@link GridRules#joins}). */
+    private int nbrMask(int u) {
+        int mask = inGridMask(u);
+        if(nonBinaryTypes == 0) {
+            int flip = typeAt(u) == 1 ? 0 : 7;
+            int top = (mask & 0x07) != 0 ? typeBits3(u - cols) ^ flip : 0;
+            int mid = typeBits3(u) ^ flip;
+            int bot = (mask & 0xe0) != 0 ? typeBits3(u + cols) ^ flip : 0;
+            int same = top | (mid & 1) << 3 | (mid & 4) << 2 | bot << 5;
+            return mask & same;
+        }
+        else {
+            byte tu = typeAt(u);
+            for(int d=0; d < 8; ++d)
+                if((mask & (1 << d)) != 0 && !GridRules.joins(tu, typeAt(u + nbrOffset[d])))
+                    mask &= ~(1 << d);
+            return mask;
+        }
+    }
+
+    /** Bitmask of directions which stay inside the grid from node {@code u}. */
+    private int inGridMask(int u) {
+        int ui = u / cols;
+        return GridRules.inGridMask(ui, u - ui * cols, rows, cols);
+    }
+
+    public Map<Integer, Double> getPredsCopy(int u) {
+        final Map<Integer, Double> hm = new HashMap<Integer, Double>(16);
+        IntDoubleConsumer collector = new IntDoubleConsumer() {
+            @Override
+            public void accept(int v, double w) {
+                hm.put(v, w);
+            }
+        };
+        if(frozen) {
+            forEachPred(u, collector);
+        }
+        else {
+            synchronized(this) {
+                forEachPred(u, collector);
             }
         }
         return hm;
     }
+
+    /** Visit neighbors of {@code u} without allocating anything.
+        This doesn't take the lock; a concurrent {@link #update} may or may not be seen.
+        Use a {@link #snapshot} for a consistent view. */
+    public void forEachPred(int u, IntDoubleConsumer visitor) {
+        int mask = nbrMask(u);
+        short ou = occAt(u);
+        while(mask != 0) {
+            int d = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+            int v = u + nbrOffset[d];
+            visitor.accept(v, GridRules.stepWeight(d, ou, occAt(v)));
+        }
+    }
+    public void forEachSucc(int u, IntDoubleConsumer visitor) {forEachPred(u, visitor);}
+
+    public int getPredDegree(int u) {
+        return Integer.bitCount(nbrMask(u));
+    }
+    public int getSuccDegree(int u) {return getPredDegree(u);}
+
     public Map<Integer, Double> getPreds(int u) {return getPredsCopy(u);}
     public Map<Integer, Double> getSuccsCopy(int u) {return getPredsCopy(u);}
     public Map<Integer, Double> getSuccs(int u) {return getPredsCopy(u);}
     public Set<Integer> getNbrs(int u) {return getPredsCopy(u).keySet();}
 
-    public GridGraph(int rows, int cols, int[] types) {
+    /** Number of words in the type bitset. */
+    private int nWords;
+
+    /** Set dimensions and derived tables, without allocating node storage. */
+    private void layout(int rows, int cols) {
         this.rows = rows;
         this.cols = cols;
         this._size = rows * cols;
-        grid = new Node[_size];
-        if(types.length != size())
+        nWords = (_size + 63) >>> 6;
+        nbrOffset = new int[8];
+        for(int d=0; d < 8; ++d)
+            nbrOffset[d] = GridRules.NBR_DI[d] * cols + GridRules.NBR_DJ[d];
+    }
+
+    /** Allocate storage for a {@code rows} &times; {@code cols} grid of type-0, unit-occupancy nodes. */
+    private void init(int rows, int cols) {
+        layout(rows, cols);
+        int nChunks = (_size + CHUNK_MASK) >>> CHUNK_BITS;
+        typeChunks = new byte[nChunks][CHUNK_SIZE];
+        occChunks = new short[nChunks][CHUNK_SIZE];
+        bitChunks = new long[nChunks][CHUNK_SIZE >>> 6];
+        for(short[] chunk: occChunks)
+            Arrays.fill(chunk, (short)1);
+        shared = new boolean[nChunks];
+        nonBinaryTypes = 0;
+        nonUnitOccs = 0;
+    }
+
+    private static byte checkType(int t) {
+        if(t < Byte.MIN_VALUE || t > Byte.MAX_VALUE)
+            throw new IllegalArgumentException("node type " + t + " doesn't fit in a byte");
+        return (byte)t;
+    }
+    private static short checkOcc(int o) {
+        if(o < Short.MIN_VALUE || o > Short.MAX_VALUE)
+            throw new IllegalArgumentException("occupancy " + o + " doesn't fit in a short");
+        return (short)o;
+    }
+
+    public GridGraph(int rows, int cols, int[] types) {
+        if(types.length != rows * cols)
             throw new IllegalArgumentException("length of types is not equal to grid size");
+        init(rows, cols);
         for(int i=0; i < types.length; ++i) {
-            grid[i] = new Node(types[i], 1);
+            setType(i, checkType(types[i]));
         }
     }
     public GridGraph(int rows, int cols) {
-        this.rows = rows;
-        this.cols = cols;
-        this._size = rows * cols;
-        grid = new Node[_size];
-        for(int i=0; i < _size; ++i) {
-            grid[i] = new Node(0, 1);
-        }
+        init(rows, cols);
     }
 
+    /** Create an updatable copy of {@code gridGraph}. Storage is shared until either graph is updated. */
     public GridGraph(GridGraph gridGraph) {
-        this.rows = gridGraph.getRows();
-        this.cols = gridGraph.getCols();
-        this._size = rows * cols;
-        grid = new Node[_size];
-        for(int i=0; i < _size; ++i) {
-            grid[i] = new Node(gridGraph.getNode(i));
+        synchronized(gridGraph) {
+            shareFrom(gridGraph, false);
         }
+        version = 0;
     }
 
     public void copyFrom(GridGraph gridGraph) throws CreateException {
@@ -196,84 +428,287 @@ public class GridGraph extends AbstractGraph
         else if(gridGraph.getCols() != this.cols) {
             throw new CreateException("number of columns don't match");
         }
-        for(int i=0; i < _size; ++i) {
-            grid[i] = new Node(gridGraph.getNode(i));
+        if(frozen)
+            throw new UnsupportedOperationException("GridGraph snapshots can't be updated");
+        synchronized(gridGraph) {
+            synchronized(this) {
+                long v = version;
+                shareFrom(gridGraph, false);
+                version = v + 1;
+                if(blockVersion != null) {
+                    // every node may have changed
+                    copyVersion = version;
+                    Arrays.fill(blockVersion, version);
+                    Arrays.fill(blockCells, null);
+                    Arrays.fill(blockCellVersions, null);
+                    Arrays.fill(blockChanges, 0);
+                }
+            }
         }
     }
 
     synchronized public void update(int i, int j, Node node) {
-        grid[i * cols + j] = node;
-        if(updateCallback != null)
-            updateCallback.run(i, j);
+        update(i * cols + j, node);
     }
     synchronized public void update(int u, Node node) {
-        grid[u] = node;
+        byte t = checkType(node.getType());
+        short o = checkOcc(node.getOcc());
+        setType(u, t);
+        setOcc(u, o);
+        version++;
+        if(blockVersion != null)
+            journal(u);
         if(updateCallback != null)
             updateCallback.run(u / cols, u % cols);
     }
 
+    /** The change journal divides the grid into square blocks of side {@code 2^JOURNAL_BLOCK_BITS}. */
+    private static final int JOURNAL_BLOCK_BITS = 4;
+    private static final int JOURNAL_BLOCK_SIDE = 1 << JOURNAL_BLOCK_BITS;
+    /** Version of the last update to any node in each journal block, or null if the change journal is off. */
+    private long[] blockVersion;
+    /** Nodes of each journal block which were updated, as offsets {@code i * side + j} within the block,
+        ordered by the version of their last update. Null for blocks with no updates. */
+    private short[][] blockCells;
+    /** Version of the last update to each node of {@link #blockCells}. */
+    private long[][] blockCellVersions;
+    /** Number of entries used in {@link #blockCells} and {@link #blockCellVersions} of each block. */
+    private int[] blockChanges;
+    /** Version of the last {@link #copyFrom}, which counts as an update to every node. */
+    private long copyVersion;
+    private int blockCols;
+    /** Version of each node of the block being read by {@link #forEachChangedBlock}, when all nodes changed. */
+    private long[] scratchVersions;
+
+    /** Turn on the change journal, which lets {@link #getChangedNodes} find updated nodes
+        without scanning the whole query window. Updates made before this call aren't recorded.
+        The journal takes a few bytes per journal block, plus a few bytes per node updated since the
+        last {@link #copyFrom}. Return the current version. */
+    synchronized public long startJournal() {
+        if(frozen)
+            throw new UnsupportedOperationException("GridGraph snapshots have no change journal");
+        if(blockVersion == null) {
+            blockCols = (cols + JOURNAL_BLOCK_SIDE - 1) >>> JOURNAL_BLOCK_BITS;
+            int blockRows = (rows + JOURNAL_BLOCK_SIDE - 1) >>> JOURNAL_BLOCK_BITS;
+            int nBlocks = blockRows * blockCols;
+            blockVersion = new long[nBlocks];
+            blockCells = new short[nBlocks][];
+            blockCellVersions = new long[nBlocks][];
+            blockChanges = new int[nBlocks];
+        }
+        return version;
+    }
+
+    private int blockOf(int i, int j) {
+        return (i >>> JOURNAL_BLOCK_BITS) * blockCols + (j >>> JOURNAL_BLOCK_BITS);
+    }
+    private void journal(int u) {
+        int i = u / cols, j = u % cols;
+        int b = blockOf(i, j);
+        short off = (short)(((i & (JOURNAL_BLOCK_SIDE - 1)) << JOURNAL_BLOCK_BITS) | (j & (JOURNAL_BLOCK_SIDE - 1)));
+        blockVersion[b] = version;
+        short[] cells = blockCells[b];
+        long[] versions = blockCellVersions[b];
+        int n = blockChanges[b];
+        if(cells == null) {
+            cells = blockCells[b] = new short[4];
+            versions = blockCellVersions[b] = new long[4];
+        }
+        // move the node's entry to the end, so that entries stay ordered by version
+        int k = n - 1;
+        while(k >= 0 && cells[k] != off)
+            --k;
+        if(k >= 0) {
+            System.arraycopy(cells, k + 1, cells, k, n - 1 - k);
+            System.arraycopy(versions, k + 1, versions, k, n - 1 - k);
+            --n;
+        }
+        else if(n == cells.length) {
+            cells = blockCells[b] = Arrays.copyOf(cells, 2 * n);
+            versions = blockCellVersions[b] = Arrays.copyOf(versions, 2 * n);
+        }
+        cells[n] = off;
+        versions[n] = version;
+        blockChanges[b] = n + 1;
+    }
+
+    /** Remembers, for one reader of the change journal, which updates it has already seen.
+        Obtain one from {@link #newChangeCursor}. */
+    public static class ChangeCursor {
+        private final GridGraph graph;
+        /** Version up to which every node of each journal block has been read. */
+        private final long[] seen;
+        /** For journal blocks which were only partly read past {@link #seen}, the version up to which each
+            node read since then has been read. */
+        private final HashMap<Integer, HashMap<Integer, Long>> partlySeen = new HashMap<Integer, HashMap<Integer, Long>>();
+
+        private ChangeCursor(GridGraph graph, long version) {
+            this.graph = graph;
+            seen = new long[graph.blockVersion.length];
+            Arrays.fill(seen, version);
+        }
+    }
+
+    /** Start the change journal if needed and return a cursor which has seen every update so far. */
+    synchronized public ChangeCursor newChangeCursor() {
+        return new ChangeCursor(this, startJournal());
+    }
+
+    /** Add to {@code output} every node in rows [{@code i1}, {@code i2}] and columns [{@code j1}, {@code j2}]
+        which was updated after version {@code since}, and return the current version.
+        Blocks with no such update are skipped in O(1), so the cost is proportional to
+        the number of blocks in the window plus the number of nodes updated in the blocks which changed. */
+    synchronized public long getChangedNodes(int i1, int j1, int i2, int j2, long since, Collection<Integer> output) {
+        checkJournal();
+        forEachChangedBlock(i1, j1, i2, j2, null, since, output);
+        return version;
+    }
+
+    /** Add to {@code output} every node in rows [{@code i1}, {@code i2}] and columns [{@code j1}, {@code j2}]
+        which was updated since {@code cursor} last saw it, and return the current version.
+        Each update to a node is reported once, even if the node's journal block was only partly in
+        earlier windows. */
+    synchronized public long getChangedNodes(ChangeCursor cursor, int i1, int j1, int i2, int j2,
+            Collection<Integer> output) {
+        checkJournal();
+        if(cursor.graph != this)
+            throw new IllegalArgumentException("cursor belongs to another graph");
+        forEachChangedBlock(i1, j1, i2, j2, cursor, 0, output);
+        return version;
+    }
+
+    private void checkJournal() {
+        if(blockVersion == null)
+            throw new IllegalStateException("change journal is off; call startJournal() first");
+    }
+
+    /** Report changed nodes in a window. If {@code cursor} is null, {@code since} is used for every block. */
+    private void forEachChangedBlock(int i1, int j1, int i2, int j2, ChangeCursor cursor, long since,
+            Collection<Integer> output) {
+        i1 = Math.max(i1, 0);
+        j1 = Math.max(j1, 0);
+        i2 = Math.min(i2, rows - 1);
+        j2 = Math.min(j2, cols - 1);
+        if(i1 > i2 || j1 > j2)
+            return;
+        for(int bi = i1 >>> JOURNAL_BLOCK_BITS; bi <= i2 >>> JOURNAL_BLOCK_BITS; ++bi) {
+            for(int bj = j1 >>> JOURNAL_BLOCK_BITS; bj <= j2 >>> JOURNAL_BLOCK_BITS; ++bj) {
+                int b = bi * blockCols + bj;
+                long v = cursor == null ? since : cursor.seen[b];
+                if(blockVersion[b] <= v)
+                    continue;
+                HashMap<Integer, Long> partly = cursor == null ? null : cursor.partlySeen.get(b);
+                int i0 = bi * JOURNAL_BLOCK_SIDE, j0 = bj * JOURNAL_BLOCK_SIDE;
+                boolean missed = false;
+                if(copyVersion > v) {
+                    // every node changed; overlay the later updates
+                    if(scratchVersions == null)
+                        scratchVersions = new long[JOURNAL_BLOCK_SIDE * JOURNAL_BLOCK_SIDE];
+                    Arrays.fill(scratchVersions, copyVersion);
+                    for(int k=0; k < blockChanges[b]; ++k)
+                        scratchVersions[blockCells[b][k]] = blockCellVersions[b][k];
+                    for(int i = i0; i < i0 + JOURNAL_BLOCK_SIDE && i < rows; ++i) {
+                        for(int j = j0; j < j0 + JOURNAL_BLOCK_SIDE && j < cols; ++j) {
+                            long cv = scratchVersions[((i - i0) << JOURNAL_BLOCK_BITS) | (j - j0)];
+                            if(i < i1 || i > i2 || j < j1 || j > j2)
+                                missed = true;
+                            else
+                                partly = report(cursor, b, partly, i * cols + j, cv, output);
+                        }
+                    }
+                }
+                else {
+                    // entries are ordered by version, so only the last ones are new
+                    short[] cells = blockCells[b];
+                    long[] versions = blockCellVersions[b];
+                    for(int k = blockChanges[b] - 1; k >= 0 && versions[k] > v; --k) {
+                        int i = i0 + (cells[k] >>> JOURNAL_BLOCK_BITS), j = j0 + (cells[k] & (JOURNAL_BLOCK_SIDE - 1));
+                        if(i < i1 || i > i2 || j < j1 || j > j2)
+                            missed = true;
+                        else
+                            partly = report(cursor, b, partly, i * cols + j, versions[k], output);
+                    }
+                }
+                if(cursor != null && !missed) {
+                    cursor.seen[b] = version;
+                    cursor.partlySeen.remove(b);
+                }
+            }
+        }
+    }
+
+    /** Add node {@code u}, last updated at {@code cellVersion}, to {@code output} unless {@code cursor}
+        already read that update, and return the nodes of block {@code b} which the cursor partly read. */
+    private static HashMap<Integer, Long> report(ChangeCursor cursor, int b, HashMap<Integer, Long> partly,
+            int u, long cellVersion, Collection<Integer> output) {
+        if(cursor == null) {
+            output.add(u);
+            return partly;
+        }
+        if(partly == null) {
+            partly = new HashMap<Integer, Long>();
+            cursor.partlySeen.put(b, partly);
+        }
+        Long read = partly.put(u, cellVersion);
+        if(read == null || read < cellVersion)
+            output.add(u);
+        return partly;
+    }
+
     /** String of characters which are interpreted as nodes of type 0 when reading from a {@link BufferedReader}. */
     public static String zeros = "0-SsGg";
 
-    public static Node nodeFromChar(char ch) throws CreateException {
+    /** Type of the node represented by {@code ch}. */
+    public static int typeFromChar(char ch) throws CreateException {
         if(ch == ' ')
             throw new CreateException("Encountered space while reading GridGraph");
-        int type = 1;
         for(int i=0; i < zeros.length(); ++i) {
             if(ch == zeros.charAt(i)) {
-                type = 0;
-                break;
+                return 0;
             }
         }
-        return new Node(type, 1);
+        return 1;
+    }
+
+    public static Node nodeFromChar(char ch) throws CreateException {
+        return nodeOf(typeFromChar(ch), 1);
     }
 
     public GridGraph(BufferedReader br) throws IOException, CreateException {
         String s;
-        cols = -1;
-        ArrayList<Node> gridArray = new ArrayList<Node>();
-        for(rows = 0; (s = br.readLine()) != null; rows++) {
+        int ncols = -1, nrows;
+        byte[] types = new byte[0];
+        for(nrows = 0; (s = br.readLine()) != null; nrows++) {
             s = s.trim();
-            if(cols != s.length()) {
-                if(cols == -1)
-                    cols = s.length();
+            if(ncols != s.length()) {
+                if(ncols == -1)
+                    ncols = s.length();
                 else
                     throw new CreateException("Rows are of different lengths");
             }
-            gridArray.ensureCapacity(cols * (rows + 1));
-            for(int j=0; j < cols; ++j) {
-                char ch = s.charAt(j);
-                gridArray.add(nodeFromChar(ch));
-            }
-        }
-        grid = new Node[gridArray.size()];
-        _size = rows * cols;
-        for(int i=0; i<_size; ++i)
-            grid[i] = gridArray.get(i);
-
-        /*
-        for(int i=0; i<rows; ++i) {
-            for(int j=0; j<cols; ++j) {
-                System.err.print(" " + grid[i * cols + j]);
+            if(types.length < (long)ncols * (nrows + 1))
+                types = Arrays.copyOf(types, Math.max(ncols * (nrows + 1), 2 * types.length));
+            for(int j=0; j < ncols; ++j) {
+                types[nrows * ncols + j] = (byte)typeFromChar(s.charAt(j));
             }
-            System.err.println();
         }
-        */
+        init(nrows, max(ncols, 0));
+        for(int u=0; u < _size; ++u)
+            setType(u, types[u]);
     }
 
     public GridGraph(List<String> lines) throws CreateException {
-        rows = lines.size();
-        cols = lines.get(0).length();
+        int nrows = lines.size();
+        int ncols = lines.get(0).length();
         for(String line: lines)
-            if(line.length() != cols)
+            if(line.length() != ncols)
                     throw new CreateException("Rows are of different lengths");
-        _size = rows * cols;
-        grid = new Node[_size];
+        init(nrows, ncols);
 
         for(int i=0; i < rows; ++i) {
+            String line = lines.get(i);
             for(int j=0; j < cols; ++j) {
-                char ch = lines.get(i).charAt(j);
-                grid[i * cols + j] = nodeFromChar(ch);
+                setType(i * cols + j, (byte)typeFromChar(line.charAt(j)));
             }
         }
     }
@@ -283,8 +718,7 @@ public class GridGraph extends AbstractGraph
         int k = 0;
         for(int i=0; i<rows; ++i) {
             for(int j=0; j<cols; ++j) {
-                int type = grid[i*cols + j].getType();
-                if(type == 0) {
+                if(typeAt(i*cols + j) == 0) {
                     a[k++] = '-';
                 }
                 else {
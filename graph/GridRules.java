@@ -0,0 +1,74 @@
+package graph;
+
+import static java.lang.Math.max;
+
+/** Movement rules shared by {@link GridGraph}, {@link MappedGridGraph} and {@link TiledGridGraph},
+    so that the three agree on which nodes are adjacent and how heavy each edge is.
+
+    A node is joined to each of its 8 neighbors which has the same type. The weight of an edge is the
+    Euclidean length of the step times the larger of the occupancies of its ends.
+*/
+final class GridRules
+{
+    private GridRules() {}
+
+    /** Row offsets of the 8 neighbors of a cell. */
+    static final int[] NBR_DI = {-1, -1, -1, 0, 0, 1, 1, 1};
+    /** Column offsets of the 8 neighbors of a cell. */
+    static final int[] NBR_DJ = {-1, 0, 1, -1, 1, -1, 0, 1};
+    /** Euclidean length of the step to each of the 8 neighbors of a cell. */
+    static final double[] NBR_LEN = {Edge.SQRT2, 1, Edge.SQRT2, 1, 1, Edge.SQRT2, 1, Edge.SQRT2};
+
+    /** Whether cell ({@code i}, {@code j}) lies in a {@code rows} &times; {@code cols} grid. */
+    static boolean inGrid(int i, int j, int rows, int cols) {
+        return i >= 0 && i < rows && j >= 0 && j < cols;
+    }
+
+    /** Bitmask of directions (indices into {@link #NBR_DI}) which stay inside a {@code rows} &times;
+        {@code cols} grid from cell ({@code i}, {@code j}). */
+    static int inGridMask(int i, int j, int rows, int cols) {
+        int mask = 0xff;
+        if(i == 0)
+            mask &= ~0x07;
+        if(i == rows - 1)
+            mask &= ~0xe0;
+        if(j == 0)
+            mask &= ~0x29;
+        if(j == cols - 1)
+            mask &= ~0x94;
+        return mask;
+    }
+
+    /** Whether neighboring nodes of types {@code typeU} and {@code typeV} are joined by an edge. */
+    static boolean joins(int typeU, int typeV) {
+        return typeU == typeV;
+    }
+
+    /** Squared distance between nodes {@code src} and {@code dst} of a grid with {@code cols} columns,
+        or -1 if they are further apart than one diagonal step. Types aren't looked at, so callers can
+        skip looking them up for nodes which are too far apart. */
+    static long stepNorm(int src, int dst, int cols) {
+        int si = src / cols, sj = src % cols;
+        int di = dst / cols, dj = dst % cols;
+        long norm = (long)(si-di)*(si-di) + (long)(sj-dj)*(sj-dj);
+        return norm <= 2 ? norm : -1;
+    }
+
+    /** Whether there is an edge between two nodes whose norm (see {@link GridGraph#norm}) is {@code norm}. */
+    static boolean hasEdge(long norm) {
+        return norm > 0 && norm <= 2;
+    }
+
+    /** Weight of the edge between two nodes whose norm is {@code norm}, or infinity if there is none. */
+    static double weight(long norm, int occSrc, int occDst) {
+        if(norm <= 0)
+            return Double.POSITIVE_INFINITY;
+        else
+            return Math.sqrt(norm) * max(occSrc, occDst);
+    }
+
+    /** Weight of the edge in direction {@code d} between nodes of occupancies {@code occU} and {@code occV}. */
+    static double stepWeight(int d, int occU, int occV) {
+        return NBR_LEN[d] * max(occU, occV);
+    }
+}
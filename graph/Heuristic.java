@@ -0,0 +1,29 @@
+package graph;
+
+/** An estimate of the length of the shortest path between two nodes of a graph.
+
+    Planners which use a heuristic find optimal paths only if it is admissible,
+    i.e. it never overestimates. A consistent heuristic ({@code h(u, t) <= w(u, v) + h(v, t)}
+    for every edge (u, v)) also lets them expand each node at most once.
+*/
+public interface Heuristic
+{
+    /** Estimate the length of the shortest path between {@code u} and {@code v}. */
+    public double estimate(int u, int v);
+
+    /** Bring the heuristic up to date with changes made to the graph. Planners which start each search
+        afresh ({@link planner.AStarPlanner}, {@link planner.LSSLRTAPlanner}) call this once before each
+        search, instead of the heuristic checking for changes on every estimate, so that the graph isn't
+        locked, and nothing is recomputed, in the middle of a search. */
+    public void refresh();
+
+    /** Heuristic which is always 0. It is admissible and consistent for every graph. */
+    public static final Heuristic ZERO = new Heuristic() {
+        @Override
+        public double estimate(int u, int v) {
+            return 0;
+        }
+        @Override
+        public void refresh() {}
+    };
+}
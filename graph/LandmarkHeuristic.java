@@ -0,0 +1,360 @@
+package graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import graph.CsrGraph;
+import graph.GenGraph;
+import graph.Heuristic;
+import util.IndexedHeap;
+
+/** Landmark (ALT) heuristic for a {@link GenGraph}, which needs no coordinates.
+
+    For each of a few landmark nodes {@code L}, the distance from {@code L} to every node and from every node
+    to {@code L} is computed in advance. By the triangle inequality, {@code d(u, v) >= d(u, L) - d(v, L)} and
+    {@code d(u, v) >= d(L, v) - d(L, u)}; the estimate is the largest of these bounds over all landmarks.
+    Planners pass the robot's node as either argument, so on directed graphs the estimate bounds the
+    distance in both directions. It is admissible, and consistent on symmetric graphs.
+
+    The distances are computed on a snapshot of the graph, and the graph's
+    {@linkplain GenGraph#openJournalReader change journal} is used to follow later updates. Raising or breaking
+    edges leaves every bound admissible, so the distances are kept (see {@link #recompute} to tighten them).
+    If an edge got lighter or was added, the next {@link #refresh} recomputes all distances.
+    Estimates don't look at the graph, so the heuristic must be built on the graph which is searched
+    (e.g. the robot's {@linkplain robot.Robot#getGraph local copy}) and refreshed before each search.
+    {@link #close} releases the heuristic's reader of the change journal once it is no longer used.
+
+    The distances can be {@linkplain #save saved} and {@linkplain #load loaded} back for the same graph.
+    File format (all numbers are big-endian): {@code int} {@link #MAGIC}, {@code int} {@link #VERSION},
+    {@code int} number of nodes, {@code int} number of landmarks, the landmarks as {@code int}s, and then
+    for each landmark the distances from it and the distances to it as {@code double}s.
+*/
+public class LandmarkHeuristic implements Heuristic
+{
+    /** Magic number at the start of a landmark file ("PFL1"). */
+    public static final int MAGIC = 0x50464C31;
+    public static final int VERSION = 1;
+
+    /** How landmarks are chosen. */
+    public static enum Selection {
+        /** Each landmark is the node farthest from the landmarks chosen before it. */
+        FARTHEST,
+        /** Each landmark is a leaf of a large subtree of a shortest path tree whose nodes get poor bounds
+            from the landmarks chosen before it (Goldberg and Werneck's "avoid"). */
+        AVOID
+    }
+
+    private final GenGraph graph;
+    private final ForkJoinPool pool;
+    private final int n;
+    private final int[] landmarks;
+    /** {@code from[k][u]} is the distance from landmark {@code k} to {@code u}. */
+    private final double[][] from;
+    /** {@code to[k][u]} is the distance from {@code u} to landmark {@code k}. */
+    private final double[][] to;
+    /** Graph the distances were computed on. */
+    private CsrGraph snapshot;
+    /** Version of the graph's change journal which has been checked against {@link #snapshot}. */
+    private long version;
+    /** Number of this heuristic's reader of the graph's change journal, or -1 if it was {@linkplain #close closed}. */
+    private int reader = -1;
+
+    /** Choose {@code count} landmarks of {@code graph} and compute their distances on {@code pool}.
+        @param seed Seed of the random choices made by the selection. */
+    public LandmarkHeuristic(GenGraph graph, int count, Selection selection, long seed, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        takeSnapshot();
+        n = snapshot.size();
+        count = Math.min(count, n);
+        landmarks = new int[count];
+        from = new double[count][];
+        to = new double[count][];
+        Random random = new Random(seed);
+        boolean[] isLandmark = new boolean[n];
+        for(int k=0; k < count; ++k) {
+            int l = -1;
+            if(selection == Selection.AVOID)
+                l = selectAvoid(k, random.nextInt(n), isLandmark);
+            if(l < 0)
+                l = selectFarthest(k, random.nextInt(n), isLandmark);
+            landmarks[k] = l;
+            isLandmark[l] = true;
+            computeDistances(k, k + 1);
+        }
+    }
+    /** Choose {@code count} landmarks with {@link Selection#AVOID} on the common pool. */
+    public LandmarkHeuristic(GenGraph graph, int count) {
+        this(graph, count, Selection.AVOID, 0, ForkJoinPool.commonPool());
+    }
+
+    private LandmarkHeuristic(GenGraph graph, int[] landmarks, double[][] from, double[][] to,
+            ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+        takeSnapshot();
+        n = snapshot.size();
+    }
+
+    private void takeSnapshot() {
+        synchronized(graph) {
+            snapshot = graph.toCsrGraph();
+            if(reader < 0)
+                reader = graph.openJournalReader();
+            version = graph.readChanges(reader, null);
+        }
+    }
+
+    public GenGraph getGraph() {return graph;}
+    /** Landmark nodes, in the order they were chosen. */
+    public int[] getLandmarks() {return landmarks.clone();}
+
+    /** Lower bound on {@code a - b} for distances which may be infinite. Infinity minus infinity gives
+        no bound. */
+    private static double diff(double a, double b) {
+        double d = a - b;
+        return d == d ? d : 0;
+    }
+
+    @Override
+    public double estimate(int u, int v) {
+        double best = 0;
+        for(int k=0; k < landmarks.length; ++k) {
+            double[] f = from[k], t = to[k];
+            double uv = Math.max(diff(t[u], t[v]), diff(f[v], f[u]));
+            double vu = Math.max(diff(t[v], t[u]), diff(f[u], f[v]));
+            best = Math.max(best, Math.min(uv, vu));
+        }
+        return best;
+    }
+
+    /** Bring the distances up to date with the changes made to the graph since they were computed or
+        last checked. They are only recomputed if some edge got lighter or was added. */
+    @Override
+    synchronized public void refresh() {
+        if(reader < 0 || graph.getVersion() == version)
+            return;
+        final boolean[] lighter = new boolean[1];
+        synchronized(graph) {
+            version = graph.readChanges(reader, new GenGraph.ChangeVisitor() {
+                public void accept(int u, int v) {
+                    double w = graph.hasEdge(u, v) ? graph.getWeight(u, v) : Double.POSITIVE_INFINITY;
+                    if(w < snapshot.getWeight(u, v))
+                        lighter[0] = true;
+                }
+            });
+        }
+        if(lighter[0])
+            recompute();
+    }
+
+    /** Stop following changes to the graph, so that the graph's change journal no longer keeps them
+        for this heuristic. Later estimates use the distances as they are. */
+    synchronized public void close() {
+        if(reader >= 0) {
+            graph.closeJournalReader(reader);
+            reader = -1;
+        }
+    }
+
+    /** Recompute the distances of every landmark from the current weights of the graph, in parallel.
+        This also tightens bounds loosened by edges which got heavier. */
+    synchronized public void recompute() {
+        takeSnapshot();
+        computeDistances(0, landmarks.length);
+    }
+
+    /** Compute the distances of landmarks {@code begin} to {@code end-1} on {@link #snapshot},
+        one task per landmark and direction. */
+    private void computeDistances(int begin, int end) {
+        final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+        for(int k = begin; k < end; ++k) {
+            final int index = k;
+            from[k] = new double[n];
+            to[k] = new double[n];
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    dijkstra(snapshot, landmarks[index], true, from[index], null, null);
+                }
+            });
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    dijkstra(snapshot, landmarks[index], false, to[index], null, null);
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    /** Dijkstra's algorithm from {@code src} along edges of {@code g} ({@code forward}) or against them.
+        Fills {@code dist}, and {@code parent} and the settling {@code order} if they aren't null.
+        Return the number of nodes settled. */
+    private static int dijkstra(CsrGraph g, int src, boolean forward, double[] dist, int[] parent, int[] order) {
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        IndexedHeap heap = new IndexedHeap(g.size());
+        dist[src] = 0;
+        if(parent != null)
+            parent[src] = -1;
+        heap.push(src, 0);
+        int settled = 0;
+        while(!heap.isEmpty()) {
+            int u = heap.pop();
+            if(order != null)
+                order[settled] = u;
+            settled++;
+            int end = forward ? g.getSuccBegin(u + 1) : g.getPredBegin(u + 1);
+            for(int k = forward ? g.getSuccBegin(u) : g.getPredBegin(u); k < end; ++k) {
+                int v = forward ? g.getSuccAt(k) : g.getPredAt(k);
+                double d = dist[u] + (forward ? g.getSuccWeightAt(k) : g.getPredWeightAt(k));
+                if(d < dist[v]) {
+                    dist[v] = d;
+                    if(parent != null)
+                        parent[v] = u;
+                    heap.push(v, d);
+                }
+            }
+        }
+        return settled;
+    }
+
+    /** Node whose distance from the first {@code count} landmarks is largest (or from {@code start} if there
+        are none yet). Nodes no landmark reaches come first. */
+    private int selectFarthest(int count, int start, boolean[] isLandmark) {
+        double[] dist;
+        if(count == 0) {
+            dist = new double[n];
+            dijkstra(snapshot, start, true, dist, null, null);
+        }
+        else {
+            dist = from[0].clone();
+            for(int k=1; k < count; ++k)
+                for(int u=0; u < n; ++u)
+                    dist[u] = Math.min(dist[u], from[k][u]);
+        }
+        int best = -1;
+        for(int u=0; u < n; ++u)
+            if(!isLandmark[u] && (best < 0 || dist[u] > dist[best]))
+                best = u;
+        return best;
+    }
+
+    /** Landmark chosen by the "avoid" method from a shortest path tree rooted at {@code root}, or -1 if every
+        subtree already contains a landmark. A node weighs as much as its distance from the root minus the
+        bound the first {@code count} landmarks give; starting at the root, the heaviest uncovered subtree is
+        followed down to a leaf. */
+    private int selectAvoid(int count, int root, boolean[] isLandmark) {
+        double[] dist = new double[n];
+        int[] parent = new int[n], order = new int[n];
+        int settled = dijkstra(snapshot, root, true, dist, parent, order);
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n];
+        int[] heaviest = new int[n];
+        Arrays.fill(heaviest, -1);
+        // children are settled after their parents
+        for(int s = settled - 1; s >= 0; --s) {
+            int u = order[s];
+            if(isLandmark[u])
+                covered[u] = true;
+            if(covered[u]) {
+                size[u] = 0;
+            }
+            else {
+                double bound = 0;
+                for(int k=0; k < count; ++k)
+                    bound = Math.max(bound, Math.max(diff(to[k][root], to[k][u]), diff(from[k][u], from[k][root])));
+                size[u] += Math.max(dist[u] - bound, 0);
+            }
+            int p = parent[u];
+            if(p < 0)
+                continue;
+            if(covered[u]) {
+                covered[p] = true;
+            }
+            else {
+                size[p] += size[u];
+                if(heaviest[p] < 0 || size[u] > size[heaviest[p]])
+                    heaviest[p] = u;
+            }
+        }
+        if(covered[root])
+            return -1;
+        int u = root;
+        while(heaviest[u] >= 0)
+            u = heaviest[u];
+        return u;
+    }
+
+    /** Write the landmarks and their distances to {@code path}. */
+    synchronized public void save(String path) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(landmarks.length);
+            for(int l: landmarks)
+                out.writeInt(l);
+            for(int k=0; k < landmarks.length; ++k) {
+                for(double d: from[k])
+                    out.writeDouble(d);
+                for(double d: to[k])
+                    out.writeDouble(d);
+            }
+        }
+    }
+
+    /** Read landmarks saved by {@link #save} for {@code graph}. The graph's weights must be at least those
+        the distances were computed from, otherwise the estimates may not be admissible.
+        @param pool Pool used when the distances are recomputed. */
+    public static LandmarkHeuristic load(String path, GenGraph graph, ForkJoinPool pool) throws IOException {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if(in.readInt() != MAGIC)
+                throw new IOException(path + ": not a landmark file");
+            int version = in.readInt();
+            if(version != VERSION)
+                throw new IOException(path + ": unsupported landmark file version " + version);
+            int n = in.readInt();
+            if(n != graph.size())
+                throw new IOException(path + ": landmarks are for a graph with " + n + " nodes, not " + graph.size());
+            int count = in.readInt();
+            if(count < 0 || count > n)
+                throw new IOException(path + ": landmark file is corrupt");
+            int[] landmarks = new int[count];
+            for(int k=0; k < count; ++k) {
+                landmarks[k] = in.readInt();
+                if(landmarks[k] < 0 || landmarks[k] >= n)
+                    throw new IOException(path + ": landmark file is corrupt");
+            }
+            double[][] from = new double[count][n], to = new double[count][n];
+            for(int k=0; k < count; ++k) {
+                for(int u=0; u < n; ++u)
+                    from[k][u] = in.readDouble();
+                for(int u=0; u < n; ++u)
+                    to[k][u] = in.readDouble();
+            }
+            return new LandmarkHeuristic(graph, landmarks, from, to, pool);
+        }
+    }
+    /** Same as {@link #load(String, GenGraph, ForkJoinPool)} using the common pool. */
+    public static LandmarkHeuristic load(String path, GenGraph graph) throws IOException {
+        return load(path, graph, ForkJoinPool.commonPool());
+    }
+}
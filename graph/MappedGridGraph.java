@@ -0,0 +1,352 @@
+package graph;
+
+import java.util.*;
+import static java.lang.Math.max;
+
+import graph.AbstractGraph;
+import graph.GridGraph;
+import graph.GridGraph.Node;
+import util.IntDoubleConsumer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** A grid graph whose cells live in a memory-mapped file instead of on the heap.
+
+    Adjacency and edge weights follow the same rules as {@link GridGraph}.
+    Cells are read and written through {@link FileChannel#map} regions, so opening a graph
+    doesn't read the file and updates made with {@link #update(int, int, Node)} are persisted.
+
+    File format (all numbers are big-endian):
+    <ul>
+    <li>{@code int} magic number {@link #MAGIC}.</li>
+    <li>{@code int} format version {@link #VERSION}.</li>
+    <li>{@code int} rows and {@code int} columns.</li>
+    <li>type plane: one {@code byte} per node, in node-number order.</li>
+    <li>occupancy plane: one {@code short} per node, in node-number order.</li>
+    </ul>
+
+    Node numbers are {@code int}s, like in every {@link AbstractGraph},
+    so a graph can have at most {@link Integer#MAX_VALUE} nodes.
+*/
+public class MappedGridGraph extends AbstractGraph
+{
+    /** Magic number at the start of a grid file ("PFG1"). */
+    public static final int MAGIC = 0x50464731;
+    public static final int VERSION = 1;
+    /** Size of the header in bytes. */
+    public static final int HEADER_SIZE = 16;
+    /** Size of each mapped region in bytes. */
+    private static final int REGION_BITS = 30;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+
+    private int rows, cols;
+    private int _size;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer[] typeRegions, occRegions;
+    private boolean writable;
+    private GridGraph.UpdateCallback updateCallback;
+
+    /** Open an existing grid file.
+        @param writable whether the file should be mapped read-write. If false, {@link #update} throws. */
+    public MappedGridGraph(String path, boolean writable) throws IOException, GridGraph.CreateException {
+        this.writable = writable;
+        file = new RandomAccessFile(path, writable ? "rw" : "r");
+        channel = file.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if(channel.read(header, 0) != HEADER_SIZE)
+            throw new GridGraph.CreateException("File too short for a grid header");
+        header.flip();
+        if(header.getInt() != MAGIC)
+            throw new GridGraph.CreateException("Not a grid file");
+        int version = header.getInt();
+        if(version != VERSION)
+            throw new GridGraph.CreateException("Unsupported grid file version " + version);
+        rows = header.getInt();
+        cols = header.getInt();
+        long n = (long)rows * cols;
+        if(rows < 0 || cols < 0 || n > Integer.MAX_VALUE)
+            throw new GridGraph.CreateException("Grid of " + rows + " x " + cols + " is too large");
+        _size = (int)n;
+        if(channel.size() < fileSize(rows, cols))
+            throw new GridGraph.CreateException("Grid file is truncated");
+
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        typeRegions = mapPlane(mode, HEADER_SIZE, n);
+        occRegions = mapPlane(mode, HEADER_SIZE + n, 2 * n);
+    }
+    /** Open an existing grid file for reading and writing. */
+    public MappedGridGraph(String path) throws IOException, GridGraph.CreateException {
+        this(path, true);
+    }
+
+    private MappedByteBuffer[] mapPlane(FileChannel.MapMode mode, long offset, long length) throws IOException {
+        int nRegions = (int)((length + REGION_SIZE - 1) >>> REGION_BITS);
+        MappedByteBuffer[] regions = new MappedByteBuffer[nRegions];
+        for(int r=0; r < nRegions; ++r) {
+            long start = (long)r << REGION_BITS;
+            regions[r] = channel.map(mode, offset + start, Math.min(REGION_SIZE, length - start));
+        }
+        return regions;
+    }
+
+    /** Size in bytes of a grid file with the given dimensions. */
+    public static long fileSize(int rows, int cols) {
+        return HEADER_SIZE + 3L * rows * cols;
+    }
+
+    private static void writeHeader(RandomAccessFile raf, int rows, int cols) throws IOException {
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeInt(VERSION);
+        raf.writeInt(rows);
+        raf.writeInt(cols);
+    }
+
+    /** Create a grid file of the given dimensions where every node has type 0 and occupancy 1. */
+    public static void create(String path, int rows, int cols) throws IOException {
+        long n = (long)rows * cols;
+        try(RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.setLength(0);
+            raf.setLength(fileSize(rows, cols));
+            writeHeader(raf, rows, cols);
+            fillOccs(raf.getChannel(), HEADER_SIZE + n, n);
+        }
+    }
+
+    /** Write unit occupancies for {@code n} nodes starting at byte {@code offset}. */
+    private static void fillOccs(FileChannel ch, long offset, long n) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        while(buf.hasRemaining())
+            buf.putShort((short)1);
+        for(long done = 0; done < n; ) {
+            int k = (int)Math.min(buf.capacity() / 2, n - done);
+            buf.clear().limit(2 * k);
+            while(buf.hasRemaining())
+                ch.write(buf, offset + 2 * done + buf.position());
+            done += k;
+        }
+    }
+
+    /** Write {@code graph} to a grid file. */
+    public static void write(GridGraph graph, String path) throws IOException {
+        int rows = graph.getRows(), cols = graph.getCols();
+        int n = graph.size();
+        synchronized(graph) {
+            try(RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+                raf.setLength(0);
+                writeHeader(raf, rows, cols);
+                FileChannel ch = raf.getChannel();
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+                long pos = HEADER_SIZE;
+                for(int u=0; u < n; ++u) {
+                    buf.put((byte)graph.getType(u));
+                    if(!buf.hasRemaining())
+                        pos = flush(ch, buf, pos);
+                }
+                pos = flush(ch, buf, pos);
+                for(int u=0; u < n; ++u) {
+                    if(buf.remaining() < 2)
+                        pos = flush(ch, buf, pos);
+                    buf.putShort((short)graph.getOcc(u));
+                }
+                flush(ch, buf, pos);
+            }
+        }
+    }
+
+    /** Convert a text grid (in the format read by {@link GridGraph#GridGraph(BufferedReader)})
+        to a grid file, one line at a time, without building the grid in memory. */
+    public static void convert(BufferedReader br, String path) throws IOException, GridGraph.CreateException {
+        try(RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.setLength(0);
+            FileChannel ch = raf.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            long pos = HEADER_SIZE;
+            int rows, cols = -1;
+            String s;
+            for(rows = 0; (s = br.readLine()) != null; rows++) {
+                s = s.trim();
+                if(cols != s.length()) {
+                    if(cols == -1)
+                        cols = s.length();
+                    else
+                        throw new GridGraph.CreateException("Rows are of different lengths");
+                }
+                if((long)(rows + 1) * cols > Integer.MAX_VALUE)
+                    throw new GridGraph.CreateException("Grid is too large");
+                for(int j=0; j < cols; ++j) {
+                    buf.put((byte)GridGraph.typeFromChar(s.charAt(j)));
+                    if(!buf.hasRemaining())
+                        pos = flush(ch, buf, pos);
+                }
+            }
+            pos = flush(ch, buf, pos);
+            cols = max(cols, 0);
+            fillOccs(ch, pos, (long)rows * cols);
+            writeHeader(raf, rows, cols);
+        }
+    }
+
+    private static long flush(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        buf.flip();
+        while(buf.hasRemaining())
+            pos += ch.write(buf, pos);
+        buf.clear();
+        return pos;
+    }
+
+    /** Number of rows. */
+    public int getRows() {return rows;}
+    /** Number of columns. */
+    public int getCols() {return cols;}
+
+    /** Octile distance, which is admissible as long as no node has occupancy less than 1. */
+    @Override
+    public Heuristic getHeuristic() {
+        return new OctileHeuristic(cols);
+    }
+    /** Size of graph, which is rows &times; columns. */
+    public int size() {return _size;}
+
+    /** Type of node {@code u}. */
+    public int getType(int u) {
+        return typeRegions[u >>> REGION_BITS].get(u & (int)(REGION_SIZE - 1));
+    }
+    /** Occupancy of node {@code u}. */
+    public int getOcc(int u) {
+        long off = 2L * u;
+        return occRegions[(int)(off >>> REGION_BITS)].getShort((int)(off & (REGION_SIZE - 1)));
+    }
+    public Node getNode(int i, int j) {return getNode(i * cols + j);}
+    public Node getNode(int u) {return new Node(getType(u), getOcc(u));}
+
+    public GridGraph.UpdateCallback getCallback() {
+        return updateCallback;
+    }
+    public void setCallback(GridGraph.UpdateCallback callback) {
+        this.updateCallback = callback;
+    }
+
+    synchronized public void update(int i, int j, Node node) {
+        update(i * cols + j, node);
+    }
+    /** Set node {@code u}. The change is written to the mapped file. */
+    synchronized public void update(int u, Node node) {
+        if(!writable)
+            throw new UnsupportedOperationException("MappedGridGraph was opened read-only");
+        int t = node.getType(), o = node.getOcc();
+        if(t < Byte.MIN_VALUE || t > Byte.MAX_VALUE || o < Short.MIN_VALUE || o > Short.MAX_VALUE)
+            throw new IllegalArgumentException(node + " doesn't fit in a grid file");
+        typeRegions[u >>> REGION_BITS].put(u & (int)(REGION_SIZE - 1), (byte)t);
+        long off = 2L * u;
+        occRegions[(int)(off >>> REGION_BITS)].putShort((int)(off & (REGION_SIZE - 1)), (short)o);
+        if(updateCallback != null)
+            updateCallback.run(u / cols, u % cols);
+    }
+
+    /** Force changes made through {@link #update} to be written to the storage device. */
+    synchronized public void flush() {
+        if(writable) {
+            for(MappedByteBuffer region: typeRegions)
+                region.force();
+            for(MappedByteBuffer region: occRegions)
+                region.force();
+        }
+    }
+    /** Flush changes and close the underlying file. The graph must not be used afterwards. */
+    synchronized public void close() throws IOException {
+        flush();
+        channel.close();
+        file.close();
+    }
+
+    /** Squared distance between nodes, -1 if nodes are not adjacent, 0 if nodes are the same. */
+    public long norm(int src, int dst) {
+        long norm = GridRules.stepNorm(src, dst, cols);
+        return norm >= 0 && GridRules.joins(getType(src), getType(dst)) ? norm : -1;
+    }
+    /** Difference between row numbers. */
+    public int diffI(int u, int v) {
+        return v / cols - u / cols;
+    }
+    /** Difference between column numbers. */
+    public int diffJ(int u, int v) {
+        return v % cols - u % cols;
+    }
+
+    public boolean hasEdge(int src, int dst) {
+        return GridRules.hasEdge(norm(src, dst));
+    }
+
+    public double getWeight(int src, int dst) {
+        return GridRules.weight(norm(src, dst), getOcc(src), getOcc(dst));
+    }
+
+    public void forEachPred(int u, IntDoubleConsumer visitor) {
+        int ui = u / cols, uj = u - ui * cols;
+        int tu = getType(u), ou = getOcc(u);
+        for(int d=0; d < 8; ++d) {
+            int vi = ui + GridRules.NBR_DI[d], vj = uj + GridRules.NBR_DJ[d];
+            if(GridRules.inGrid(vi, vj, rows, cols)) {
+                int v = vi * cols + vj;
+                if(GridRules.joins(tu, getType(v)))
+                    visitor.accept(v, GridRules.stepWeight(d, ou, getOcc(v)));
+            }
+        }
+    }
+    public void forEachSucc(int u, IntDoubleConsumer visitor) {forEachPred(u, visitor);}
+
+    public Map<Integer, Double> getPredsCopy(int u) {
+        final Map<Integer, Double> hm = new HashMap<Integer, Double>(16);
+        forEachPred(u, new IntDoubleConsumer() {
+            @Override
+            public void accept(int v, double w) {
+                hm.put(v, w);
+            }
+        });
+        return hm;
+    }
+    public Map<Integer, Double> getPreds(int u) {return getPredsCopy(u);}
+    public Map<Integer, Double> getSuccsCopy(int u) {return getPredsCopy(u);}
+    public Map<Integer, Double> getSuccs(int u) {return getPredsCopy(u);}
+    public Set<Integer> getNbrs(int u) {return getPredsCopy(u).keySet();}
+
+    public int getPredDegree(int u) {
+        int ui = u / cols, uj = u - ui * cols;
+        int tu = getType(u);
+        int deg = 0;
+        for(int d=0; d < 8; ++d) {
+            int vi = ui + GridRules.NBR_DI[d], vj = uj + GridRules.NBR_DJ[d];
+            if(GridRules.inGrid(vi, vj, rows, cols) && GridRules.joins(tu, getType(vi * cols + vj)))
+                deg++;
+        }
+        return deg;
+    }
+    public int getSuccDegree(int u) {return getPredDegree(u);}
+
+    public String toString() {
+        return "MappedGridGraph(" + rows + ", " + cols + ")";
+    }
+
+    /** Convert a text grid file to a binary grid file. */
+    public static void main(String[] args) throws IOException, GridGraph.CreateException {
+        String usage = "usage: java graph.MappedGridGraph <text grid file> <output grid file>";
+        if(args.length != 2) {
+            System.err.println(usage);
+            System.exit(1);
+        }
+        try(BufferedReader br = new BufferedReader(new FileReader(args[0]))) {
+            convert(br, args[1]);
+        }
+        MappedGridGraph graph = new MappedGridGraph(args[1], false);
+        System.out.println(graph);
+        graph.close();
+    }
+}
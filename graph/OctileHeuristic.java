@@ -0,0 +1,39 @@
+package graph;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/** Octile distance between cells of an 8-connected grid whose nodes are numbered row by row,
+    like {@link GridGraph}.
+
+    This is the length of a shortest path which ignores obstacles: {@code max(di, dj) - min(di, dj)}
+    straight steps plus {@code min(di, dj)} diagonal steps of length {@link Edge#SQRT2},
+    multiplied by the least occupancy of any cell. It is consistent as long as no cell has
+    a smaller occupancy than that.
+*/
+public class OctileHeuristic implements Heuristic
+{
+    private final int cols;
+    private final double minOcc;
+
+    public OctileHeuristic(int cols, double minOcc) {
+        this.cols = cols;
+        this.minOcc = minOcc;
+    }
+    /** Octile distance for grids where every cell has occupancy at least 1. */
+    public OctileHeuristic(int cols) {
+        this(cols, 1);
+    }
+
+    /** Nothing to do, since the estimate doesn't depend on the graph's cells. */
+    @Override
+    public void refresh() {}
+
+    @Override
+    public double estimate(int u, int v) {
+        int di = abs(u / cols - v / cols), dj = abs(u % cols - v % cols);
+        int lo = min(di, dj), hi = max(di, dj);
+        return ((hi - lo) + lo * Edge.SQRT2) * minOcc;
+    }
+}
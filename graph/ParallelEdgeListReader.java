@@ -0,0 +1,274 @@
+package graph;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Parses a text edge list (the format read by {@link GenGraph#GenGraph(java.io.BufferedReader, boolean)})
+    in parallel.
+
+    The file is split into byte ranges which end at newlines. Each range is memory-mapped
+    and parsed on a {@link ForkJoinPool} into primitive arrays, without creating a
+    {@link String} per line. Edges are kept in file order so that the caller can apply them
+    exactly like the sequential reader does.
+*/
+class ParallelEdgeListReader
+{
+    /** Ranges are at least this long so that small files aren't split needlessly. */
+    private static final long MIN_CHUNK = 1 << 20;
+    /** Ranges are at most this long so that each one can be mapped as a single buffer. */
+    private static final long MAX_CHUNK = 1 << 30;
+
+    /** Edges parsed from one byte range, in file order. */
+    static class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        /** Number of edges a chunk has room for before its arrays first grow. */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private final FileChannel channel;
+        private final long start, end;
+        int count;
+        int[] src, dst;
+        double[] w;
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            // start small and grow, rather than guess from the chunk length and allocate it all up front
+            src = new int[INITIAL_CAPACITY];
+            dst = new int[INITIAL_CAPACITY];
+            w = new double[INITIAL_CAPACITY];
+        }
+
+        private void add(int u, int v, double wt) {
+            if(count == src.length) {
+                int cap = 2 * count + 1;
+                src = Arrays.copyOf(src, cap);
+                dst = Arrays.copyOf(dst, cap);
+                w = Arrays.copyOf(w, cap);
+            }
+            src[count] = u;
+            dst[count] = v;
+            w[count] = wt;
+            count++;
+        }
+
+        @Override
+        protected void compute() {
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            }
+            catch(IOException e) {
+                throw new RuntimeException(e);
+            }
+            NumberScanner sc = new NumberScanner(buf);
+            while(sc.skipBlankLines()) {
+                int u = sc.nextInt();
+                int v = sc.nextInt();
+                double wt = sc.nextDouble();
+                sc.endLine();
+                add(u, v, wt);
+            }
+        }
+    }
+
+    /** Hand-rolled parser for whitespace-separated numbers in a byte buffer. */
+    static class NumberScanner {
+        private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+        private final MappedByteBuffer buf;
+        private int pos;
+        private final int limit;
+
+        NumberScanner(MappedByteBuffer buf) {
+            this.buf = buf;
+            this.pos = 0;
+            this.limit = buf.limit();
+        }
+
+        private static boolean isSpace(int c) {
+            return c == ' ' || c == '\t' || c == '\r';
+        }
+
+        /** Skip spaces and empty lines. Return false at the end of the buffer. */
+        boolean skipBlankLines() {
+            while(pos < limit) {
+                int c = buf.get(pos);
+                if(isSpace(c) || c == '\n')
+                    pos++;
+                else
+                    return true;
+            }
+            return false;
+        }
+        private void skipSpaces() {
+            while(pos < limit && isSpace(buf.get(pos)))
+                pos++;
+        }
+        /** Skip the rest of the current line. Like the sequential reader, anything after the weight is ignored. */
+        void endLine() {
+            while(pos < limit && buf.get(pos) != '\n')
+                pos++;
+            if(pos < limit)
+                pos++;
+        }
+        private NumberFormatException error(String msg) {
+            return new NumberFormatException(msg + " at byte " + pos + " of chunk");
+        }
+
+        int nextInt() {
+            skipSpaces();
+            boolean neg = false;
+            if(pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+                neg = buf.get(pos++) == '-';
+            long x = 0;
+            int digits = 0;
+            for(; pos < limit; ++pos, ++digits) {
+                int c = buf.get(pos) - '0';
+                if(c < 0 || c > 9)
+                    break;
+                x = 10 * x + c;
+                if(x > (long)Integer.MAX_VALUE + 1)
+                    throw error("integer too large");
+            }
+            if(digits == 0)
+                throw error("expected an integer");
+            x = neg ? -x : x;
+            if(x > Integer.MAX_VALUE)
+                throw error("integer too large");
+            return (int)x;
+        }
+
+        /** Parse a decimal number. Numbers with at most 15 significant digits and a small exponent
+            are computed exactly from their mantissa and a power of 10, which gives the same result as
+            {@link Double#parseDouble}. Anything else falls back to {@link Double#parseDouble}. */
+        double nextDouble() {
+            skipSpaces();
+            int begin = pos;
+            boolean neg = false;
+            if(pos < limit && (buf.get(pos) == '-' || buf.get(pos) == '+'))
+                neg = buf.get(pos++) == '-';
+            long mant = 0;
+            int sig = 0, exp = 0, digits = 0;
+            boolean dot = false;
+            for(; pos < limit; ++pos) {
+                int c = buf.get(pos);
+                if(c == '.' && !dot) {
+                    dot = true;
+                    continue;
+                }
+                c -= '0';
+                if(c < 0 || c > 9)
+                    break;
+                digits++;
+                if(mant == 0 && c == 0) {
+                    // leading zero
+                    if(dot)
+                        exp--;
+                }
+                else if(sig < 18) {
+                    mant = 10 * mant + c;
+                    sig++;
+                    if(dot)
+                        exp--;
+                }
+                else {
+                    return slowDouble(begin);
+                }
+            }
+            boolean atEnd = pos >= limit || isSpace(buf.get(pos)) || buf.get(pos) == '\n';
+            if(digits == 0 || !atEnd || sig > 15 || exp < -22 || exp > 22)
+                return slowDouble(begin);
+            double x = (double)mant;
+            x = exp < 0 ? x / POW10[-exp] : x * POW10[exp];
+            return neg ? -x : x;
+        }
+
+        /** Parse the token starting at {@code begin} with {@link Double#parseDouble}. */
+        private double slowDouble(int begin) {
+            pos = begin;
+            StringBuilder sb = new StringBuilder();
+            for(; pos < limit; ++pos) {
+                int c = buf.get(pos);
+                if(isSpace(c) || c == '\n')
+                    break;
+                sb.append((char)c);
+            }
+            return Double.parseDouble(sb.toString());
+        }
+    }
+
+    /** Number of nodes, read from the first line. */
+    int size;
+    /** Parsed chunks, in file order. */
+    Chunk[] chunks;
+
+    /** Parse the file at {@code path} using {@code pool}. */
+    ParallelEdgeListReader(String path, ForkJoinPool pool) throws IOException {
+        try(RandomAccessFile raf = new RandomAccessFile(path, "r")) {
+            FileChannel ch = raf.getChannel();
+            long len = ch.size();
+            long headerEnd = lineEnd(raf, 0, len);
+            raf.seek(0);
+            String header = raf.readLine();
+            if(header == null)
+                throw new IOException(path + ": empty file");
+            size = Integer.parseInt(header.trim());
+
+            long body = len - headerEnd;
+            int parts = pool.getParallelism() * 4;
+            long chunkLen = Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, (body + parts - 1) / Math.max(parts, 1)));
+            List<Chunk> list = new ArrayList<Chunk>();
+            for(long start = headerEnd; start < len; ) {
+                long end = start + chunkLen >= len ? len : lineEnd(raf, start + chunkLen, len);
+                if(end - start > Integer.MAX_VALUE)
+                    throw new IOException(path + ": line too long");
+                list.add(new Chunk(ch, start, end));
+                start = end;
+            }
+            chunks = list.toArray(new Chunk[list.size()]);
+            try {
+                pool.submit(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        ForkJoinTask.invokeAll(chunks);
+                    }
+                }).get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading " + path, e);
+            }
+            catch(java.util.concurrent.ExecutionException e) {
+                Throwable cause = e.getCause();
+                if(cause instanceof RuntimeException)
+                    throw (RuntimeException)cause;
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /** Position just after the first newline at or after {@code pos}, or {@code len}. */
+    private static long lineEnd(RandomAccessFile raf, long pos, long len) throws IOException {
+        byte[] buf = new byte[4096];
+        while(pos < len) {
+            raf.seek(pos);
+            int r = raf.read(buf, 0, (int)Math.min(buf.length, len - pos));
+            for(int k=0; k < r; ++k)
+                if(buf[k] == '\n')
+                    return pos + k + 1;
+            pos += r;
+        }
+        return len;
+    }
+}
@@ -0,0 +1,361 @@
+package graph;
+
+import java.util.*;
+
+import graph.AbstractGraph;
+import graph.GridGraph;
+import graph.GridGraph.Node;
+import util.IntDoubleConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** A grid graph which is split into square tiles that are loaded from disk on demand.
+
+    Adjacency and edge weights follow the same rules as {@link GridGraph}, and node numbers are
+    {@code i * columns + j} as in {@link GridGraph}, so neighbors in different tiles are handled transparently.
+
+    Tiles are stored in a directory (the tile store) which contains a file {@value #META_NAME}
+    with the grid's dimensions and one file per tile that has ever been written.
+    A tile without a file consists of type-0, unit-occupancy nodes.
+    Nodes inside a tile are stored in Z-order (Morton order) so that nearby nodes share cache lines.
+
+    At most {@link #getMaxTiles} tiles are kept in memory. When another tile is needed,
+    the least recently used one is evicted, and written back first if it was modified.
+*/
+public class TiledGridGraph extends AbstractGraph
+{
+    /** Name of the file in the tile store which describes the grid. */
+    public static final String META_NAME = "grid.meta";
+    private static final int META_MAGIC = 0x50465431;  // "PFT1"
+
+    /** A square block of {@code tileSize} &times; {@code tileSize} nodes. */
+    private class Tile {
+        final long id;
+        final byte[] type;
+        final short[] occ;
+        boolean dirty;
+
+        Tile(long id) {
+            this.id = id;
+            type = new byte[tileArea];
+            occ = new short[tileArea];
+        }
+    }
+
+    private File dir;
+    private int rows, cols;
+    private int _size;
+    private int tileBits, tileSize, tileMask, tileArea;
+    private int tileCols;
+    private int maxTiles;
+    private LinkedHashMap<Long, Tile> tiles;
+    /** Most recently used tile, checked before {@link #tiles}. */
+    private Tile lastTile;
+    private long hits, misses, evictions;
+    private GridGraph.UpdateCallback updateCallback;
+
+    /** Open a tile store.
+        @param memoryBudget maximum number of bytes of tile data to keep in memory.
+            At least one tile is always kept. */
+    public TiledGridGraph(String dirPath, long memoryBudget) throws IOException, GridGraph.CreateException {
+        dir = new File(dirPath);
+        try(RandomAccessFile raf = new RandomAccessFile(new File(dir, META_NAME), "r")) {
+            if(raf.readInt() != META_MAGIC)
+                throw new GridGraph.CreateException(dirPath + " is not a tile store");
+            rows = raf.readInt();
+            cols = raf.readInt();
+            tileBits = raf.readInt();
+        }
+        long n = (long)rows * cols;
+        if(rows < 0 || cols < 0 || n > Integer.MAX_VALUE || tileBits < 1 || tileBits > 12)
+            throw new GridGraph.CreateException(dirPath + ": invalid tile store dimensions");
+        _size = (int)n;
+        tileSize = 1 << tileBits;
+        tileMask = tileSize - 1;
+        tileArea = tileSize * tileSize;
+        tileCols = (cols + tileSize - 1) >> tileBits;
+        setMemoryBudget(memoryBudget);
+        tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true);
+    }
+
+    /** Create an empty tile store in {@code dirPath} for a {@code rows} &times; {@code cols} grid
+        of type-0, unit-occupancy nodes, with tiles of {@code 2^tileBits} &times; {@code 2^tileBits} nodes. */
+    public static void create(String dirPath, int rows, int cols, int tileBits) throws IOException {
+        File d = new File(dirPath);
+        if(!d.isDirectory() && !d.mkdirs())
+            throw new IOException("couldn't create directory " + dirPath);
+        File[] old = d.listFiles();
+        for(File f: old)
+            if(f.getName().startsWith("tile-"))
+                f.delete();
+        try(RandomAccessFile raf = new RandomAccessFile(new File(d, META_NAME), "rw")) {
+            raf.setLength(0);
+            raf.writeInt(META_MAGIC);
+            raf.writeInt(rows);
+            raf.writeInt(cols);
+            raf.writeInt(tileBits);
+        }
+    }
+
+    /** Create a tile store in {@code dirPath} holding a copy of {@code graph}. */
+    public static void write(GridGraph graph, String dirPath, int tileBits)
+        throws IOException, GridGraph.CreateException {
+        synchronized(graph) {
+            create(dirPath, graph.getRows(), graph.getCols(), tileBits);
+            // enough memory for one row of tiles, since nodes are visited row by row
+            int tileSize = 1 << tileBits;
+            long rowBytes = 3L * tileSize * tileSize * ((graph.getCols() + tileSize - 1) / tileSize);
+            TiledGridGraph tiled = new TiledGridGraph(dirPath, rowBytes);
+            int n = graph.size();
+            for(int u=0; u < n; ++u) {
+                int t = graph.getType(u), o = graph.getOcc(u);
+                if(t != 0 || o != 1)
+                    tiled.set(u, t, o);
+            }
+            tiled.flush();
+        }
+    }
+
+    /** Number of rows. */
+    public int getRows() {return rows;}
+    /** Number of columns. */
+    public int getCols() {return cols;}
+
+    /** Octile distance, which is admissible as long as no node has occupancy less than 1. */
+    @Override
+    public Heuristic getHeuristic() {
+        return new OctileHeuristic(cols);
+    }
+    /** Size of graph, which is rows &times; columns. */
+    public int size() {return _size;}
+    /** Number of nodes along each side of a tile. */
+    public int getTileSize() {return tileSize;}
+
+    /** Maximum number of tiles kept in memory. */
+    public int getMaxTiles() {return maxTiles;}
+    /** Set the maximum number of bytes of tile data kept in memory. Excess tiles are evicted immediately. */
+    synchronized public void setMemoryBudget(long bytes) {
+        long tileBytes = 3L * tileArea;
+        maxTiles = (int)Math.max(1, Math.min(Integer.MAX_VALUE, bytes / tileBytes));
+        if(tiles != null) {
+            Iterator<Tile> it = tiles.values().iterator();
+            while(tiles.size() > maxTiles && it.hasNext()) {
+                evict(it.next());
+                it.remove();
+            }
+        }
+    }
+
+    /** Number of node accesses which found their tile in memory. */
+    synchronized public long getHits() {return hits;}
+    /** Number of node accesses which had to load their tile from the tile store. */
+    synchronized public long getMisses() {return misses;}
+    /** Number of tiles evicted from memory. */
+    synchronized public long getEvictions() {return evictions;}
+    /** Number of tiles currently in memory. */
+    synchronized public int getLoadedTiles() {return tiles.size();}
+
+    public GridGraph.UpdateCallback getCallback() {
+        return updateCallback;
+    }
+    public void setCallback(GridGraph.UpdateCallback callback) {
+        this.updateCallback = callback;
+    }
+
+    /** Interleave the low 16 bits of {@code x} with zeros. */
+    private static int spreadBits(int x) {
+        x &= 0xffff;
+        x = (x | (x << 8)) & 0x00ff00ff;
+        x = (x | (x << 4)) & 0x0f0f0f0f;
+        x = (x | (x << 2)) & 0x33333333;
+        x = (x | (x << 1)) & 0x55555555;
+        return x;
+    }
+    /** Z-order index of the node at row {@code i} and column {@code j} inside its tile. */
+    private int zIndex(int i, int j) {
+        return (spreadBits(i & tileMask) << 1) | spreadBits(j & tileMask);
+    }
+
+    private File tileFile(long id) {
+        return new File(dir, "tile-" + (id / tileCols) + "-" + (id % tileCols) + ".bin");
+    }
+
+    /** Get the tile containing row {@code i} and column {@code j}, loading it if needed. */
+    private Tile tileAt(int i, int j) {
+        long id = (long)(i >> tileBits) * tileCols + (j >> tileBits);
+        Tile t = lastTile;
+        if(t != null && t.id == id) {
+            hits++;
+            return t;
+        }
+        t = tiles.get(id);
+        if(t != null) {
+            hits++;
+        }
+        else {
+            misses++;
+            t = load(id);
+            tiles.put(id, t);
+            if(tiles.size() > maxTiles) {
+                Iterator<Tile> it = tiles.values().iterator();
+                evict(it.next());
+                it.remove();
+            }
+        }
+        lastTile = t;
+        return t;
+    }
+
+    private Tile load(long id) {
+        Tile t = new Tile(id);
+        File f = tileFile(id);
+        if(!f.exists()) {
+            Arrays.fill(t.occ, (short)1);
+            return t;
+        }
+        try(RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            ByteBuffer buf = ByteBuffer.allocate(3 * tileArea);
+            FileChannel ch = raf.getChannel();
+            while(buf.hasRemaining())
+                if(ch.read(buf) < 0)
+                    throw new IOException(f + " is truncated");
+            buf.flip();
+            buf.get(t.type);
+            buf.asShortBuffer().get(t.occ);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return t;
+    }
+
+    private void store(Tile t) {
+        ByteBuffer buf = ByteBuffer.allocate(3 * tileArea);
+        buf.put(t.type);
+        buf.asShortBuffer().put(t.occ);
+        buf.rewind();
+        try(RandomAccessFile raf = new RandomAccessFile(tileFile(t.id), "rw")) {
+            FileChannel ch = raf.getChannel();
+            while(buf.hasRemaining())
+                ch.write(buf);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        t.dirty = false;
+    }
+
+    private void evict(Tile t) {
+        if(t.dirty)
+            store(t);
+        if(lastTile == t)
+            lastTile = null;
+        evictions++;
+    }
+
+    /** Write every modified tile back to the tile store. */
+    synchronized public void flush() {
+        for(Tile t: tiles.values())
+            if(t.dirty)
+                store(t);
+    }
+
+    /** Type of node {@code u}. */
+    synchronized public int getType(int u) {
+        int i = u / cols, j = u - i * cols;
+        return tileAt(i, j).type[zIndex(i, j)];
+    }
+    /** Occupancy of node {@code u}. */
+    synchronized public int getOcc(int u) {
+        int i = u / cols, j = u - i * cols;
+        return tileAt(i, j).occ[zIndex(i, j)];
+    }
+    public Node getNode(int i, int j) {return getNode(i * cols + j);}
+    synchronized public Node getNode(int u) {return new Node(getType(u), getOcc(u));}
+
+    private void set(int u, int t, int o) {
+        int i = u / cols, j = u - i * cols;
+        Tile tile = tileAt(i, j);
+        int z = zIndex(i, j);
+        tile.type[z] = (byte)t;
+        tile.occ[z] = (short)o;
+        tile.dirty = true;
+    }
+
+    synchronized public void update(int i, int j, Node node) {
+        update(i * cols + j, node);
+    }
+    /** Set node {@code u}. The change reaches the tile store when its tile is evicted or {@link #flush}ed. */
+    synchronized public void update(int u, Node node) {
+        int t = node.getType(), o = node.getOcc();
+        if(t < Byte.MIN_VALUE || t > Byte.MAX_VALUE || o < Short.MIN_VALUE || o > Short.MAX_VALUE)
+            throw new IllegalArgumentException(node + " doesn't fit in a tile");
+        set(u, t, o);
+        if(updateCallback != null)
+            updateCallback.run(u / cols, u % cols);
+    }
+
+    /** Squared distance between nodes, -1 if nodes are not adjacent, 0 if nodes are the same. */
+    synchronized public long norm(int src, int dst) {
+        long norm = GridRules.stepNorm(src, dst, cols);
+        return norm >= 0 && GridRules.joins(getType(src), getType(dst)) ? norm : -1;
+    }
+    /** Difference between row numbers. */
+    public int diffI(int u, int v) {
+        return v / cols - u / cols;
+    }
+    /** Difference between column numbers. */
+    public int diffJ(int u, int v) {
+        return v % cols - u % cols;
+    }
+
+    public boolean hasEdge(int src, int dst) {
+        return GridRules.hasEdge(norm(src, dst));
+    }
+
+    synchronized public double getWeight(int src, int dst) {
+        return GridRules.weight(norm(src, dst), getOcc(src), getOcc(dst));
+    }
+
+    /** Visit neighbors of {@code u}. Neighbors in the same tile as {@code u} are read without a tile lookup. */
+    synchronized public void forEachPred(int u, IntDoubleConsumer visitor) {
+        int ui = u / cols, uj = u - ui * cols;
+        Tile home = tileAt(ui, uj);
+        int zu = zIndex(ui, uj);
+        int tu = home.type[zu], ou = home.occ[zu];
+        for(int d=0; d < 8; ++d) {
+            int vi = ui + GridRules.NBR_DI[d], vj = uj + GridRules.NBR_DJ[d];
+            if(GridRules.inGrid(vi, vj, rows, cols)) {
+                Tile t = ((vi ^ ui) | (vj ^ uj)) >> tileBits == 0 ? home : tileAt(vi, vj);
+                int zv = zIndex(vi, vj);
+                if(GridRules.joins(tu, t.type[zv]))
+                    visitor.accept(vi * cols + vj, GridRules.stepWeight(d, ou, t.occ[zv]));
+            }
+        }
+    }
+    public void forEachSucc(int u, IntDoubleConsumer visitor) {forEachPred(u, visitor);}
+
+    synchronized public Map<Integer, Double> getPredsCopy(int u) {
+        final Map<Integer, Double> hm = new HashMap<Integer, Double>(16);
+        forEachPred(u, new IntDoubleConsumer() {
+            @Override
+            public void accept(int v, double w) {
+                hm.put(v, w);
+            }
+        });
+        return hm;
+    }
+    public Map<Integer, Double> getPreds(int u) {return getPredsCopy(u);}
+    public Map<Integer, Double> getSuccsCopy(int u) {return getPredsCopy(u);}
+    public Map<Integer, Double> getSuccs(int u) {return getPredsCopy(u);}
+    public Set<Integer> getNbrs(int u) {return getPredsCopy(u).keySet();}
+
+    public String toString() {
+        return "TiledGridGraph(" + rows + ", " + cols + ", tile " + tileSize + ")";
+    }
+}
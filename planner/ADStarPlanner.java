@@ -0,0 +1,237 @@
+package planner;
+
+import java.util.*;
+import java.awt.Color;
+import static java.lang.Math.abs;
+import util.PQ;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+import dstar.AnytimeDStar;
+
+import gridpanel.GridPanelCell;
+import gridpanel.MutableGridPanelCell;
+import graph.AbstractGraph;
+import graph.Heuristic;
+import graph.GridGraph;
+import planner.AbstractPlanner;
+import robot.Robot;
+
+/** Path-planner which uses the Anytime D* algorithm.
+
+    {@link #replan()} runs searches until the path is optimal, like {@link DStarLitePlanner}.
+    {@link #replan(AbstractPlanner.Budget)} stops when the budget runs out; the path found by the last search
+    which ended is kept along with its suboptimality bound, and the robot follows it while later calls
+    lower the bound. If a budget runs out before a path is found after an update, the inflation goes back
+    to its initial value so that the next calls find a worse path sooner.
+*/
+public class ADStarPlanner extends AbstractPlanner
+{
+    /** Inflation of the heuristic used by the first search if none is given to the constructor. */
+    public static final double DEFAULT_EPSILON = 3;
+
+    private Robot robot;
+    private AbstractGraph graph;
+    private AnytimeDStar dstar;
+    private AnytimeDStar.Callback dstarCallback;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private Heuristic givenHeuristic;
+    private final double initialEpsilon;
+    /** Next node on the path found by the last search which ended, for each node on that path. */
+    private final HashMap<Integer, Integer> next = new HashMap<Integer, Integer>();
+    /** Node from which {@link #next} was found, or -1 if there is no usable path. */
+    private int pathStart = -1;
+    /** Suboptimality bound of the path in {@link #next}. */
+    private double pathBound = Double.POSITIVE_INFINITY;
+    /** {@link AnytimeDStar#getSearchCount} when {@link #next} was filled. */
+    private long pathSearch = -1;
+
+    public Robot getRobot() {
+        return robot;
+    }
+
+    synchronized public void setCallback(Callback c) {
+        if(c == null) {
+            callback = new AbstractPlanner.Callback();
+        }
+        else {
+            callback = c;
+        }
+        dstarCallback = new AnytimeDStar.Callback() {
+            @Override
+            public void nodeUpdate(int u) {
+                callback.nodeUpdate(u);
+            }
+            @Override
+            public void fullUpdate() {
+                callback.fullUpdate();
+            }
+        };
+    }
+
+    /**
+        @param heuristic Estimate of distance between nodes, used to focus the search. If null, the graph's
+            {@linkplain AbstractGraph#getHeuristic own heuristic} is used.
+        @param epsilon Inflation of the heuristic used by the first search; at least 1.
+    */
+    public ADStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic, double epsilon) {
+        this.goal = goal;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "ADStarPlanner");
+        this.givenHeuristic = heuristic;
+        this.initialEpsilon = epsilon;
+        setCallback(callback);
+        resetRobot(robot);
+    }
+    public ADStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, null, DEFAULT_EPSILON);
+    }
+    public ADStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
+    public ADStarPlanner(int goal, Robot robot) {
+        this(goal, robot, new AbstractPlanner.Callback());
+    }
+
+    synchronized public void resetRobot(Robot robot) {
+    /* Reset Planner */
+        this.robot = robot;
+        graph = robot.getGraph();
+        Heuristic heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+        dstar = new AnytimeDStar(goal, graph, new AnytimeDStar.Callback(), queueFactory, heuristic, initialEpsilon);
+        dstar.setCallback(dstarCallback);
+        forgetPath();
+        callback.fullUpdate();
+        replan();
+    }
+
+    synchronized public void reset() {
+        dstar.reset();
+        forgetPath();
+        replan();
+    }
+
+    /** Next node on the path kept from the last search which ended, or -1 if {@code u} isn't on it. */
+    public int getNext(int u) {
+        Integer v = next.get(u);
+        return v == null ? -1 : v;
+    }
+
+    /** Inflation of the heuristic used by the current search. */
+    public double getSearchEpsilon() {
+        return dstar.getEpsilon();
+    }
+
+    @Override
+    public double getEpsilon() {
+        int u = robot.getPosition();
+        return u == pathStart || next.containsKey(u) ? pathBound : Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public boolean isImprovable() {
+        return dstar.getEpsilon() > 1 || Double.isInfinite(dstar.getBound());
+    }
+
+    protected void examineUpdates(Set<Integer> l) {
+        dstar.setStart(robot.getPosition());
+        dstar.examineUpdates(l);
+        // the kept path may use changed edges
+        if(l.size() > 0)
+            forgetPath();
+    }
+
+    private void forgetPath() {
+        next.clear();
+        pathStart = -1;
+        pathBound = Double.POSITIVE_INFINITY;
+    }
+
+    /** Keep the path from the robot's node found by the search which just ended. */
+    private void keepPath() {
+        forgetPath();
+        int u = robot.getPosition();
+        pathStart = u;
+        pathBound = dstar.getBound();
+        pathSearch = dstar.getSearchCount();
+        if(Double.isInfinite(dstar.getG(u)))
+            return;
+        // stop at a node without a successor or at a repeated one, and keep no path then
+        while(u != goal) {
+            int v = Double.isInfinite(dstar.getG(u)) ? -1 : dstar.getNext(u);
+            if(v == -1 || next.containsKey(v) || v == pathStart) {
+                forgetPath();
+                return;
+            }
+            next.put(u, v);
+            u = v;
+        }
+        next.put(goal, goal);
+    }
+
+    synchronized public long replan()
+    {
+        System.err.println("Replanning");
+        long pops;
+        for(pops=0; dstar.replanIter(robot.getPosition()); ++pops);
+        keepPath();
+        callback.pathUpdate();
+        System.err.println("Replanned");
+        return pops;
+    }
+
+    @Override
+    synchronized public long replan(Budget budget)
+    {
+        long pops = 0;
+        int curr = robot.getPosition();
+        while(!budget.isExhausted(pops) && dstar.replanIter(curr))
+            ++pops;
+        if(!Double.isInfinite(dstar.getBound()) && dstar.getSearchCount() != pathSearch)
+            keepPath();
+        else if(Double.isInfinite(getEpsilon()) && dstar.getEpsilon() < initialEpsilon)
+            dstar.setEpsilon(initialEpsilon);
+        callback.pathUpdate();
+        return pops;
+    }
+
+    public GridPanelCell getGridPanelCell(int u, boolean onPath) {
+        int v = getNext(u);
+        int type = 0;
+        int arrowX = 0, arrowY = 0;
+        double gu = dstar.getG(u), rhsu = dstar.getRhs(u);
+        boolean isOpen = !(Double.isInfinite(gu) && Double.isInfinite(rhsu)) && abs(gu - rhsu) >= PQ.PQElem.EPS;
+
+        if(graph instanceof GridGraph) {
+            GridGraph gridGraph = (GridGraph)graph;
+            type = gridGraph.getNode(u).getType();
+            if(v != -1) {
+                arrowX = gridGraph.diffJ(u, v);
+                arrowY = gridGraph.diffI(u, v);
+            }
+        }
+
+        Color color;
+        if(type > 0) {
+            color = onPath ? Color.BLUE.darker() : (isOpen ? Color.RED.darker() : Color.BLACK);
+        }
+        else {
+            int curr = robot.getPosition();
+            if(u == curr || u == goal) {
+                color = u == curr && u == goal ? Color.GREEN.darker() : Color.GREEN;
+            }
+            else if(onPath) {
+                color = isOpen ? Color.MAGENTA : Color.CYAN;
+            }
+            else {
+                color = isOpen ? new Color(255, 63, 63) : (v == -1 ? Color.LIGHT_GRAY : Color.WHITE);
+            }
+        }
+        MutableGridPanelCell gpc = new MutableGridPanelCell();
+        gpc.setColor(color);
+        gpc.setArrowX(arrowX);
+        gpc.setArrowY(arrowY);
+        gpc.setToolTip("g: " + gu + "\nrhs: " + rhsu + "\nepsilon: " + dstar.getEpsilon());
+        return gpc;
+    }
+}
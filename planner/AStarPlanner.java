@@ -0,0 +1,124 @@
+package planner;
+
+import java.util.*;
+import static java.lang.Math.abs;
+
+import graph.AbstractGraph;
+import graph.Heuristic;
+import planner.AbstractPlanner;
+import robot.Robot;
+import util.IndexedHeap;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+
+/** Path-planner which uses the A* algorithm.
+
+    Like {@link DijkstraPlanner}, it searches backwards from the goal so that every expanded node
+    knows its next node towards the goal, but nodes are ordered by {@code dist(u) + h(u, robot)}
+    and the search stops as soon as the robot's node is expanded.
+    With an admissible heuristic the path found is optimal; nodes are re-opened if a shorter path
+    to an already expanded node is found, which only happens if the heuristic isn't consistent.
+*/
+public class AStarPlanner extends DijkstraPlannerHelper
+{
+    private IntPriorityQueue pq;
+    private Robot robot;
+    private AbstractGraph graph;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private final Heuristic givenHeuristic;
+    private Heuristic heuristic;
+    /** Node where the robot was when the current search started. */
+    private int target;
+    private final Relaxer relaxer = new Relaxer();
+
+    /** Relaxes edges into the node being expanded. Reused across expansions to avoid allocation. */
+    private class Relaxer implements IntDoubleConsumer {
+        int u;
+
+        public void accept(int v, double w) {
+            double dist2 = getDist(u) + w;
+            if(getStage(v) == Stage.NEW || dist2 < getDist(v)) {
+                setDistNextStage(v, dist2, u, Stage.OPEN);
+                pq.push(v, dist2 + heuristic.estimate(v, target));
+            }
+        }
+    }
+
+    /**
+        @param heuristic Estimate of distance between nodes. If null, the graph's
+            {@linkplain AbstractGraph#getHeuristic own heuristic} is used.
+    */
+    public AStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic) {
+        super(robot.getGraph().size());
+        this.goal = goal;
+        this.callback = callback;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "AStarPlanner");
+        this.givenHeuristic = heuristic;
+        resetRobot(robot);
+    }
+    public AStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, null);
+    }
+    public AStarPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
+    public AStarPlanner(int goal, Robot robot) {
+        this(goal, robot, new AbstractPlanner.Callback());
+    }
+
+    public Robot getRobot() {
+        return robot;
+    }
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+    synchronized public void resetRobot(Robot robot) {
+    /* Reset Planner */
+        this.robot = robot;
+        this.graph = robot.getGraph();
+        this.heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+        pq = queueFactory.create(graph.size());
+        replan();
+    }
+
+    protected void examineUpdates(Set<Integer> l) {}
+
+    public void reset() {
+        replan();
+    }
+
+    /** Search from the goal until the robot's node is expanded. Return the number of expansions. */
+    synchronized public long replan()
+    {
+        System.err.println("Replanning");
+        target = robot.getPosition();
+        heuristic.refresh();
+        setAllDistNextStage(Double.POSITIVE_INFINITY, -1, Stage.NEW);
+        setDistNextStage(goal, 0, goal, Stage.OPEN);
+        pq.clear();
+        pq.push(goal, heuristic.estimate(goal, target));
+
+        long pops;
+        for(pops = 0; !pq.isEmpty(); ++pops)
+        {
+            double prio = pq.topPriority();
+            int u = pq.pop();
+            if(getStage(u) != Stage.OPEN)
+                throw new RuntimeException("Stage " + getStage(u) + " node found in priority queue");
+            else if(abs(prio - getDist(u) - heuristic.estimate(u, target)) >= IndexedHeap.EPS)
+                throw new RuntimeException("Mismatch between priority queue ("
+                    + prio + ") and f[" + u + "] (" + (getDist(u) + heuristic.estimate(u, target)) + ")");
+            setStage(u, Stage.CLOSED);
+            if(u == target)
+                break;
+
+            relaxer.u = u;
+            graph.forEachPred(u, relaxer);
+        }
+        callback.pathUpdate();
+        return pops;
+    }
+}
@@ -4,7 +4,12 @@ import java.util.*;
 import gridpanel.GridPanelCell;
 import graph.AbstractGraph;
 import graph.GenGraph;
+import graph.Heuristic;
 import robot.Robot;
+import util.IndexedHeap;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 
 /** Abstract base class for path planning algorithms */
 public abstract class AbstractPlanner
@@ -21,10 +26,226 @@ public abstract class AbstractPlanner
         public void fullUpdate(){}
     }
 
+    /** Limit on the work done by {@link #replan(Budget)}: a number of expansions, a deadline, or both. */
+    public static class Budget {
+        private final long expansions;
+        /** Deadline as a {@link System#nanoTime} value, or null if there is none. */
+        private final Long deadline;
+
+        public Budget(long expansions, Long deadline) {
+            this.expansions = expansions;
+            this.deadline = deadline;
+        }
+        /** Budget of {@code n} expansions. */
+        public static Budget expansions(long n) {
+            return new Budget(n, null);
+        }
+        /** Budget which runs out {@code ms} milliseconds from now. */
+        public static Budget millis(long ms) {
+            return new Budget(Long.MAX_VALUE, System.nanoTime() + ms * 1000000);
+        }
+
+        /** Whether the budget has run out after {@code used} expansions. */
+        public boolean isExhausted(long used) {
+            return used >= expansions || (deadline != null && System.nanoTime() - deadline >= 0);
+        }
+    }
+
+    /** Outcome of {@link #move(int, Budget)}. */
+    public static class Plan {
+        /** Path the robot followed, from the node where it was before moving; empty if it didn't move. */
+        public final List<Integer> path;
+        /** When the path was planned, it was at most this many times as long as the shortest path from the
+            node it was planned from. Infinity if the robot didn't move or the planner gives no bound. */
+        public final double epsilon;
+        /** Number of expansions done by the replan. */
+        public final long expansions;
+
+        public Plan(List<Integer> path, double epsilon, long expansions) {
+            this.path = path;
+            this.epsilon = epsilon;
+            this.expansions = expansions;
+        }
+        public boolean moved() {return !path.isEmpty();}
+    }
+
+    /** Decides whether changes reported by the robot can alter the path from the robot's node, so that
+        {@link #move} can leave out replans which wouldn't change anything.
+
+        It keeps the path from the last replan along with the weights of its edges. A batch of updated nodes
+        is relevant if an edge of the path from the robot's node got heavier, or if some other edge between
+        updated nodes could be part of a shorter path: the heuristic distance from the robot to its source,
+        plus its weight, plus the heuristic distance from its target to the goal, is less than what remains
+        of the path. The robot reports both ends of every changed edge, so no other edge can have changed.
+        Stored distances aren't used, since changes left out of a replan may make them overestimate.
+
+        Irrelevant nodes are deferred and handed to the planner with the next relevant batch. Until then they
+        are watched: checked again on every move, in case a change gets relevant as the robot moves. A node
+        stops being watched once the robot has passed it on the path, or once its heuristic distance from the
+        robot is at least what remains of the path, since that distance can't shrink faster than the path
+        as the robot follows it. Each check takes time proportional to the edges of the updated and watched
+        nodes, and nothing is allocated unless the path is recorded or deferred nodes are released. */
+    public static class ChangeClassifier {
+        private final AbstractGraph graph;
+        private final Heuristic heuristic;
+        private final int goal;
+        /** Path from the last replan, or null if there is none. */
+        private List<Integer> path;
+        /** Position of each node on {@link #path}. */
+        private final HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+        /** Weight of each edge of {@link #path} when it was recorded. */
+        private double[] weights;
+        /** Sum of {@link #weights} from each node of {@link #path} to the goal. */
+        private double[] remaining;
+        /** Updated nodes which haven't been handed to the planner yet. */
+        private final Set<Integer> deferred = new HashSet<Integer>();
+        /** Deferred nodes which are still checked on every move. */
+        private final Set<Integer> watched = new HashSet<Integer>();
+        private long replansAvoided;
+
+        public ChangeClassifier(AbstractGraph graph, Heuristic heuristic, int goal) {
+            this.graph = graph;
+            this.heuristic = heuristic;
+            this.goal = goal;
+        }
+
+        /** Number of moves whose updates were all deferred instead of causing a replan. */
+        public long getReplansAvoided() {return replansAvoided;}
+        /** Updated nodes which haven't been handed to the planner yet. */
+        public Set<Integer> getDeferred() {return Collections.unmodifiableSet(deferred);}
+
+        /** Record the path which the planner just found. An empty path counts as no path. */
+        public void setPath(List<Integer> path) {
+            index.clear();
+            // the deferred nodes may matter to the new path
+            watched.addAll(deferred);
+            if(path.isEmpty() || path.get(path.size() - 1) != goal) {
+                this.path = null;
+                return;
+            }
+            this.path = path;
+            int n = path.size();
+            weights = new double[n - 1];
+            remaining = new double[n];
+            for(int k=0; k < n; ++k) {
+                index.put(path.get(k), k);
+                if(k + 1 < n)
+                    weights[k] = graph.getWeight(path.get(k), path.get(k + 1));
+            }
+            for(int k = n - 2; k >= 0; --k)
+                remaining[k] = remaining[k + 1] + weights[k];
+        }
+
+        /** Whether the recorded path goes from {@code u} to {@code v}. */
+        public boolean follows(int u, int v) {
+            Integer k = path == null ? null : index.get(u);
+            return k != null && k + 1 < path.size() && path.get(k + 1) == v;
+        }
+
+        /** Whether edge {@code k} of the path, if it is ahead of {@code start}, got heavier. */
+        private boolean isHeavier(int start, int k) {
+            return k >= start && k + 1 < path.size()
+                && graph.getWeight(path.get(k), path.get(k + 1)) > weights[k] + IndexedHeap.EPS;
+        }
+
+        /** Whether the updated nodes in {@code nodes}, or the watched ones, can alter the path from {@code s}. */
+        public boolean canAffectPath(int s, Set<Integer> nodes) {
+            if(nodes.isEmpty() && watched.isEmpty())
+                return false;
+            Integer start = path == null ? null : index.get(s);
+            if(start == null)
+                return true;
+            // only path edges with an updated end can have changed
+            for(int x: nodes) {
+                Integer k = index.get(x);
+                if(k != null && (isHeavier(start, k - 1) || isHeavier(start, k)))
+                    return true;
+            }
+            shortcutFinder.start = start;
+            shortcutFinder.nodes = nodes;
+            shortcutFinder.remaining = remaining[start];
+            shortcutFinder.found = false;
+            for(int x: nodes)
+                if(findShortcut(s, x))
+                    return true;
+            for(Iterator<Integer> it = watched.iterator(); it.hasNext();) {
+                int x = it.next();
+                Integer k = index.get(x);
+                if(k != null && k < start) {
+                    // behind the robot
+                    it.remove();
+                }
+                else if(heuristic.estimate(s, x) >= remaining[start]) {
+                    it.remove();
+                }
+                else if(findShortcut(s, x)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Whether an edge out of updated node {@code x} could be part of a shorter path from {@code s}. */
+        private boolean findShortcut(int s, int x) {
+            shortcutFinder.x = x;
+            shortcutFinder.hx = heuristic.estimate(s, x);
+            if(shortcutFinder.hx < shortcutFinder.remaining)
+                graph.forEachSucc(x, shortcutFinder);
+            return shortcutFinder.found;
+        }
+
+        /** Looks for an edge out of node {@code x}, to a node which was updated too, which could be part of
+            a path from {@code s} shorter than {@code remaining}. Reused across nodes to avoid allocation. */
+        private class ShortcutFinder implements IntDoubleConsumer {
+            int start, x;
+            double hx, remaining;
+            Set<Integer> nodes;
+            boolean found;
+
+            public void accept(int y, double w) {
+                if(found || !(nodes.contains(y) || deferred.contains(y)))
+                    return;
+                // edges of the path itself were checked by comparing their weights
+                Integer k = index.get(x);
+                if(k != null && k >= start && k + 1 < path.size() && path.get(k + 1) == y)
+                    return;
+                if(hx + w + heuristic.estimate(y, goal) < remaining - IndexedHeap.EPS)
+                    found = true;
+            }
+        }
+        private final ShortcutFinder shortcutFinder = new ShortcutFinder();
+
+        /** Keep {@code nodes} until a relevant batch comes. */
+        public void defer(Set<Integer> nodes) {
+            if(!nodes.isEmpty()) {
+                deferred.addAll(nodes);
+                watched.addAll(nodes);
+                replansAvoided++;
+            }
+        }
+
+        /** Return {@code nodes} together with the deferred nodes, which stop being deferred. */
+        public Set<Integer> release(Set<Integer> nodes) {
+            watched.clear();
+            if(deferred.isEmpty())
+                return nodes;
+            Set<Integer> all = new HashSet<Integer>(deferred);
+            all.addAll(nodes);
+            deferred.clear();
+            return all;
+        }
+    }
+
     protected int goal;
     /** Distance travelled till now by the robot. */
     protected double distance;
     protected Callback callback;
+    /** Creates the priority queues used by the planner's searches. */
+    protected IntPriorityQueue.Factory queueFactory = QueueUtil.HEAP;
+    /** Filter of the updates seen by {@link #move}, or null if every update causes a replan. */
+    private ChangeClassifier classifier;
+    /** Nodes deferred by a classifier which was turned off, to be examined by the next move. */
+    private Set<Integer> pendingUpdates = Collections.emptySet();
 
     protected AbstractPlanner() {
         this.callback = new Callback();
@@ -38,6 +259,7 @@ public abstract class AbstractPlanner
     }
 
     public Callback getCallback() {return callback;}
+    public IntPriorityQueue.Factory getQueueFactory() {return queueFactory;}
     public void setCallback(Callback callback) {
         if(callback == null) {
             this.callback = new AbstractPlanner.Callback();
@@ -47,6 +269,26 @@ public abstract class AbstractPlanner
         }
     }
 
+    /** Classifier used by {@link #move}, or null if it is turned off. */
+    public ChangeClassifier getChangeClassifier() {return classifier;}
+
+    /** Turn on or off the {@linkplain ChangeClassifier filtering} of updates which can't alter the path.
+        Only meant for planners whose {@link #getPath} leads from the robot's node to the goal and whose
+        updates may be examined late. Turning it off hands the deferred nodes to the next move. */
+    synchronized public void setChangeClassifier(boolean on) {
+        if(on == (classifier != null))
+            return;
+        if(on) {
+            AbstractGraph graph = getRobot().getGraph();
+            classifier = new ChangeClassifier(graph, graph.getHeuristic(), goal);
+            classifier.setPath(getPath(getRobot().getPosition()));
+        }
+        else {
+            pendingUpdates = classifier.release(Collections.<Integer>emptySet());
+            classifier = null;
+        }
+    }
+
     public abstract Robot getRobot();
     public abstract void resetRobot(Robot robot);
     /** Get the best node which a robot should move to if the robot is at node {@code u}. */
@@ -57,6 +299,22 @@ public abstract class AbstractPlanner
     /** Replan best path. */
     public abstract long replan();
 
+    /** Replan, stopping when {@code budget} runs out. Planners whose searches can't be stopped early do a
+        full {@link #replan()}. Return the number of expansions. */
+    public long replan(Budget budget) {
+        return replan();
+    }
+    /** Bound on the suboptimality of the path from the robot's node (see {@link Plan#epsilon}),
+        or infinity if there is no bound. Planners whose paths are optimal return 1. */
+    public double getEpsilon() {
+        return 1;
+    }
+    /** Whether {@link #move(int)} should replan even without updates, e.g. because further replans
+        improve the path. */
+    public boolean isImprovable() {
+        return false;
+    }
+
     /** Examine set of changed nodes reported by robot. */
     protected abstract void examineUpdates(Set<Integer> updatedNodes);
 
@@ -82,6 +340,38 @@ public abstract class AbstractPlanner
         return l;
     }
 
+    /** Get the updates seen by the robot at node {@code u}, pass them through the classifier if it is on,
+        and hand the relevant ones to {@link #examineUpdates(Set)}. Return whether any were handed over. */
+    private boolean examineUpdates(int u, int radius) {
+        Set<Integer> updatedNodes = getRobot().getUpdatedNodes(radius);
+        if(!pendingUpdates.isEmpty()) {
+            pendingUpdates.addAll(updatedNodes);
+            updatedNodes = pendingUpdates;
+            pendingUpdates = Collections.emptySet();
+        }
+        if(classifier != null) {
+            if(classifier.graph != getRobot().getGraph()) {
+                // the robot was reset
+                classifier = new ChangeClassifier(getRobot().getGraph(), getRobot().getGraph().getHeuristic(), goal);
+                classifier.setPath(getPath(u));
+            }
+            else if(!classifier.follows(u, getNext(u))) {
+                // the planner replanned on its own, e.g. in reset()
+                classifier.setPath(getPath(u));
+            }
+            if(classifier.canAffectPath(u, updatedNodes)) {
+                updatedNodes = classifier.release(updatedNodes);
+            }
+            else {
+                classifier.defer(updatedNodes);
+                updatedNodes = Collections.emptySet();
+            }
+        }
+        boolean changed = (updatedNodes.size() > 0);
+        examineUpdates(updatedNodes);
+        return changed;
+    }
+
     /** Try to move one step towards the goal.
         @param radius Radius of sensor used to detect changes in environment. */
     synchronized public long move(int radius) {
@@ -89,13 +379,14 @@ public abstract class AbstractPlanner
         if(u == goal)
             throw new RuntimeException("Already at goal");
 
-        Set<Integer> updatedNodes = getRobot().getUpdatedNodes(radius);
-        boolean changed = (updatedNodes.size() > 0);
-        examineUpdates(updatedNodes);
+        boolean changed = examineUpdates(u, radius);
 
         long time_taken = 0;
-        if(changed)
+        if(changed || isImprovable()) {
             time_taken = replan();
+            if(classifier != null)
+                classifier.setPath(getPath(u));
+        }
         int v = getNext(u);
         if(v == -1)
             throw new RuntimeException("No path to destination");
@@ -108,4 +399,41 @@ public abstract class AbstractPlanner
         return time_taken;
     }
     public long move() {return this.move(0);}
+
+    /** Try to move one step towards the goal, replanning no longer than {@code budget} allows.
+
+        Unlike {@link #move(int)}, the replan may stop before the path is optimal, or before there is any path.
+        The robot then moves along the best path found so far, or stays where it is; later calls continue
+        the replan and improve the path.
+        @param radius Radius of sensor used to detect changes in environment. */
+    synchronized public Plan move(int radius, Budget budget) {
+        int u = getRobot().getPosition();
+        if(u == goal)
+            throw new RuntimeException("Already at goal");
+
+        boolean changed = examineUpdates(u, radius);
+
+        long pops = 0;
+        if(changed || isImprovable()) {
+            pops = replan(budget);
+            if(classifier != null)
+                classifier.setPath(getPath(u));
+        }
+        double epsilon = getEpsilon();
+        int v = getNext(u);
+        if(v == -1) {
+            // without a bound, the search just hasn't found a path yet
+            if(Double.isInfinite(epsilon))
+                return new Plan(new ArrayList<Integer>(), epsilon, pops);
+            throw new RuntimeException("No path to destination");
+        }
+        List<Integer> path = getPath(u);
+
+        getRobot().moveTo(v);
+        // moveTo might not actually move to v
+        int v2 = getRobot().getPosition();
+        distance += getRobot().getGraph().getWeight(u, v2);
+        callback.move(u, v);
+        return new Plan(path, epsilon, pops);
+    }
 }
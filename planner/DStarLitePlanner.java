@@ -5,11 +5,14 @@ import java.awt.Color;
 import static java.lang.Math.abs;
 import static java.lang.Math.min;
 import util.PQ;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 import dstar.DStarLite;
 
 import gridpanel.GridPanelCell;
 import gridpanel.MutableGridPanelCell;
 import graph.AbstractGraph;
+import graph.Heuristic;
 import graph.GridGraph;
 import planner.AbstractPlanner;
 import robot.Robot;
@@ -21,6 +24,9 @@ public class DStarLitePlanner extends AbstractPlanner
     private AbstractGraph graph;
     private DStarLite dstar;
     private DStarLite.Callback dstarCallback;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private Heuristic givenHeuristic;
+    private final DStarLite.Storage storage;
 
     public Robot getRobot() {
         return robot;
@@ -45,11 +51,32 @@ public class DStarLitePlanner extends AbstractPlanner
         };
     }
 
-    public DStarLitePlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+    /**
+        @param heuristic Estimate of distance between nodes, used to focus the search. If null, the graph's
+            {@linkplain AbstractGraph#getHeuristic own heuristic} is used.
+        @param storage How D* Lite stores its state; {@link DStarLite.Storage#SPARSE} suits graphs much
+            larger than the part the robot explores, and makes D* Lite ignore {@code queueFactory}.
+    */
+    public DStarLitePlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic, DStarLite.Storage storage) {
         this.goal = goal;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "DStarLitePlanner");
+        this.givenHeuristic = heuristic;
+        this.storage = storage;
         setCallback(callback);
         resetRobot(robot);
     }
+    public DStarLitePlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic) {
+        this(goal, robot, callback, queueFactory, heuristic, DStarLite.Storage.DENSE);
+    }
+    public DStarLitePlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, null);
+    }
+    public DStarLitePlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
     public DStarLitePlanner(int goal, Robot robot) {
         this(goal, robot, new AbstractPlanner.Callback());
     }
@@ -61,7 +88,8 @@ public class DStarLitePlanner extends AbstractPlanner
         synchronized(resetRobotLock) {
             this.robot = robot;
             graph = robot.getGraph();
-            dstar = new DStarLite(goal, graph);
+            Heuristic heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+            dstar = new DStarLite(goal, graph, new DStarLite.Callback(), queueFactory, heuristic, storage);
             dstar.setCallback(dstarCallback);
         }
         callback.fullUpdate();
@@ -75,10 +103,19 @@ public class DStarLitePlanner extends AbstractPlanner
     public int getNext(int u) {
         return dstar.getNext(u);
     }
+    @Override
+    public List<Integer> getPath(int u) {
+        int[] path = dstar.getPath(u);
+        List<Integer> l = new ArrayList<Integer>(path.length);
+        for(int v: path)
+            l.add(v);
+        return l;
+    }
     protected void updateNode(int u) {
         dstar.updateNode(u);
     }
     protected void examineUpdates(Set<Integer> l) {
+        dstar.setStart(robot.getPosition());
         dstar.examineUpdates(l);
     }
     synchronized public long replan()
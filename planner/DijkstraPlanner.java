@@ -1,17 +1,17 @@
 package planner;
 
 import java.util.*;
-import java.awt.Color;
 import static java.lang.Math.abs;
 
-import gridpanel.GridPanelCell;
-import gridpanel.MutableGridPanelCell;
 import graph.AbstractGraph;
 import graph.GenGraph;
 import graph.GridGraph;
 import graph.Edge;
 import planner.AbstractPlanner;
 import robot.Robot;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -41,70 +41,44 @@ class PQElem implements Comparable<PQElem>
     }
 }
 
-abstract class DijkstraPlannerHelper extends AbstractPlanner
-{
-    public static enum Stage
-    {NEW, OPEN, CLOSED}
-
-    private Stage stage[];
-    private double dist[];
-    private int next[];
-    private int size;
-
-    public double getDist(int u) {return dist[u];}
-    public int getNext(int u) {return next[u];}
-    public Stage getStage(int u) {return stage[u];}
-
-    protected void setDist(int u, double dist) {
-        this.dist[u] = dist;
-        callback.nodeUpdate(u);
-    }
-    protected void setNext(int u, int next) {
-        this.next[u] = next;
-        callback.nodeUpdate(u);
-    }
-    protected void setStage(int u, Stage stage) {
-        this.stage[u] = stage;
-        callback.nodeUpdate(u);
-    }
-    protected void setDistNextStage(int u, double dist, int next, Stage stage) {
-        this.dist[u] = dist;
-        this.next[u] = next;
-        this.stage[u] = stage;
-        callback.nodeUpdate(u);
-    }
-    protected void setAllDistNextStage(double dist, int next, Stage stage) {
-        for(int i=0; i<size; ++i) {
-            this.dist[i] = dist;
-            this.next[i] = next;
-            this.stage[i] = stage;
-        }
-        callback.fullUpdate();
-    }
-
-    protected DijkstraPlannerHelper(int n)
-    {
-        super();
-        size = n;
-        stage = new Stage[n];
-        dist = new double[n];
-        next = new int[n];
-    }
-}
-
 /** Path-planner which uses Dijkstra's algorithm. */
 public class DijkstraPlanner extends DijkstraPlannerHelper
 {
-    private PriorityQueue<PQElem> pq;
+    private IntPriorityQueue pq;
     private Robot robot;
     private AbstractGraph graph;
+    private final Relaxer relaxer = new Relaxer();
 
-    public DijkstraPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+    /** Relaxes edges into the node being expanded. Reused across expansions to avoid allocation. */
+    private class Relaxer implements IntDoubleConsumer {
+        int u;
+
+        public void accept(int v, double w) {
+            if(getStage(v) == Stage.NEW) {
+                setDistNextStage(v, getDist(u) + w, u, Stage.OPEN);
+                pq.push(v, getDist(v));
+            }
+            else if(getStage(v) == Stage.OPEN) {
+                double dist2 = getDist(u) + w;
+                if(dist2 < getDist(v)) {
+                    setDistNextStage(v, dist2, u, Stage.OPEN);
+                    pq.push(v, dist2);
+                }
+            }
+        }
+    }
+
+    public DijkstraPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
         super(robot.getGraph().size());
         this.goal = goal;
         this.callback = callback;
+        this.queueFactory = queueFactory;
         resetRobot(robot);
     }
+    public DijkstraPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
     public DijkstraPlanner(int goal, Robot robot) {
         this(goal, robot, new AbstractPlanner.Callback());
     }
@@ -116,6 +90,7 @@ public class DijkstraPlanner extends DijkstraPlannerHelper
     /* Reset Planner */
         this.robot = robot;
         this.graph = robot.getGraph();
+        pq = queueFactory.create(graph.size());
         replan();
     }
 
@@ -125,95 +100,19 @@ public class DijkstraPlanner extends DijkstraPlannerHelper
         replan();
     }
 
-    public GridPanelCell getGridPanelCell(int u, boolean onPath) {
-        int v = getNext(u);
-        int type = 0;
-        Stage stage = getStage(u);
-        int arrowX = 0, arrowY = 0;
-
-        if(graph instanceof GridGraph) {
-            GridGraph gridGraph = (GridGraph)graph;
-            type = gridGraph.getNode(u).getType();
-            if(v != -1) {
-                arrowX = gridGraph.diffJ(u, v);
-                arrowY = gridGraph.diffI(u, v);
-            }
-            else {
-                arrowX = arrowY = 0;
-            }
-        }
-
-        //List<int> path = getPath(getCurr());
-        Color color;
-        if(type > 0) {
-            if(onPath) {
-                if(stage == Stage.OPEN)
-                    color = Color.MAGENTA.darker();
-                else
-                    color = Color.BLUE.darker();
-            }
-            else {
-                if(stage == Stage.OPEN)
-                    color = Color.RED.darker();
-                else
-                    color = Color.BLACK;
-            }
-        }
-        else {
-            int curr = robot.getPosition();
-            if(u == curr || u == goal) {
-                if(u == curr && u == goal) {
-                    color = Color.GREEN.darker();
-                }
-                else {
-                    color = Color.GREEN;
-                }
-            }
-            else if(onPath) {
-                if(stage == Stage.NEW) {
-                    color = Color.CYAN.darker();
-                }
-                else if(stage == Stage.OPEN) {
-                    color = Color.MAGENTA;
-                }
-                else {
-                    color = Color.CYAN;
-                }
-            }
-            else {
-                if(stage == Stage.NEW) {
-                    color = Color.LIGHT_GRAY;
-                }
-                else if(stage == Stage.OPEN) {
-                    color = new Color(255, 63, 63);
-                }
-                else {
-                    color = Color.WHITE;
-                }
-            }
-        }
-        MutableGridPanelCell gpc = new MutableGridPanelCell();
-        gpc.setColor(color);
-        gpc.setArrowX(arrowX);
-        gpc.setArrowY(arrowY);
-        gpc.setToolTip("dist: " + getDist(u) + "\nnext: " + getNext(u) + "\nstage: " + getStage(u));
-        return gpc;
-    }
-
     synchronized public long replan()
     {
         System.err.println("Replanning");
         setAllDistNextStage(Double.POSITIVE_INFINITY, -1, Stage.NEW);
         setDistNextStage(goal, 0, goal, Stage.OPEN);
-        pq = new PriorityQueue<PQElem>();
-        pq.add(new PQElem(goal, getDist(goal)));
+        pq.clear();
+        pq.push(goal, getDist(goal));
 
         long pops;
         for(pops = 0; !pq.isEmpty(); ++pops)
         {
-            PQElem head = pq.poll();
-            int u = head.getValue();
-            double prio = head.getPriority();
+            double prio = pq.topPriority();
+            int u = pq.pop();
             if(getStage(u) == Stage.CLOSED)
                 continue;
             else if(getStage(u) != Stage.OPEN)
@@ -225,21 +124,8 @@ public class DijkstraPlanner extends DijkstraPlannerHelper
             if(u == robot.getPosition())
                 break;
 
-            for(Map.Entry<Integer, Double> entry: graph.getPreds(u).entrySet()) {
-                int v = entry.getKey();
-                double w = entry.getValue();
-                if(getStage(v) == Stage.NEW) {
-                    setDistNextStage(v, getDist(u) + w, u, Stage.OPEN);
-                    pq.add(new PQElem(v, getDist(v)));
-                }
-                else if(getStage(v) == Stage.OPEN) {
-                    double dist2 = getDist(u) + w;
-                    if(dist2 < getDist(v)) {
-                        setDistNextStage(v, dist2, u, Stage.OPEN);
-                        pq.add(new PQElem(v, dist2));
-                    }
-                }
-            }
+            relaxer.u = u;
+            graph.forEachPred(u, relaxer);
         }
         /*
         for(int i=0; i<graph.size(); ++i)
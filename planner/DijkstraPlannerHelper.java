@@ -0,0 +1,162 @@
+package planner;
+
+import java.util.*;
+import java.awt.Color;
+
+import gridpanel.GridPanelCell;
+import gridpanel.MutableGridPanelCell;
+import graph.AbstractGraph;
+import graph.GridGraph;
+import planner.AbstractPlanner;
+
+/** Stores the distance to the goal, next node and stage of each node for planners which search
+    backwards from the goal ({@link DijkstraPlanner}, {@link AStarPlanner}, {@link JPSPlanner}). */
+abstract class DijkstraPlannerHelper extends AbstractPlanner
+{
+    public static enum Stage
+    {NEW, OPEN, CLOSED}
+
+    private Stage stage[];
+    private double dist[];
+    private int next[];
+    /** Entries of a node are valid only if its stamp equals {@link #epoch}; otherwise the node
+        has the values given to the last {@link #setAllDistNextStage} call. */
+    private int stamp[];
+    private int epoch;
+    private double allDist = Double.POSITIVE_INFINITY;
+    private int allNext = -1;
+    private Stage allStage = Stage.NEW;
+
+    public double getDist(int u) {return stamp[u] == epoch ? dist[u] : allDist;}
+    public int getNext(int u) {return stamp[u] == epoch ? next[u] : allNext;}
+    public Stage getStage(int u) {return stamp[u] == epoch ? stage[u] : allStage;}
+
+    /** Make the entries of node {@code u} valid, so that one of them can be set alone. */
+    private void touch(int u) {
+        if(stamp[u] != epoch) {
+            stamp[u] = epoch;
+            dist[u] = allDist;
+            next[u] = allNext;
+            stage[u] = allStage;
+        }
+    }
+    protected void setDist(int u, double dist) {
+        touch(u);
+        this.dist[u] = dist;
+        callback.nodeUpdate(u);
+    }
+    protected void setNext(int u, int next) {
+        touch(u);
+        this.next[u] = next;
+        callback.nodeUpdate(u);
+    }
+    protected void setStage(int u, Stage stage) {
+        touch(u);
+        this.stage[u] = stage;
+        callback.nodeUpdate(u);
+    }
+    protected void setDistNextStage(int u, double dist, int next, Stage stage) {
+        stamp[u] = epoch;
+        this.dist[u] = dist;
+        this.next[u] = next;
+        this.stage[u] = stage;
+        callback.nodeUpdate(u);
+    }
+    /** Give every node the same values. Takes constant time: nodes are only written when set again. */
+    protected void setAllDistNextStage(double dist, int next, Stage stage) {
+        allDist = dist;
+        allNext = next;
+        allStage = stage;
+        if(++epoch == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            epoch = 1;
+        }
+        callback.fullUpdate();
+    }
+
+    public GridPanelCell getGridPanelCell(int u, boolean onPath) {
+        int v = getNext(u);
+        int type = 0;
+        Stage stage = getStage(u);
+        int arrowX = 0, arrowY = 0;
+
+        AbstractGraph graph = getRobot().getGraph();
+        if(graph instanceof GridGraph) {
+            GridGraph gridGraph = (GridGraph)graph;
+            type = gridGraph.getNode(u).getType();
+            if(v != -1) {
+                arrowX = gridGraph.diffJ(u, v);
+                arrowY = gridGraph.diffI(u, v);
+            }
+            else {
+                arrowX = arrowY = 0;
+            }
+        }
+
+        //List<int> path = getPath(getCurr());
+        Color color;
+        if(type > 0) {
+            if(onPath) {
+                if(stage == Stage.OPEN)
+                    color = Color.MAGENTA.darker();
+                else
+                    color = Color.BLUE.darker();
+            }
+            else {
+                if(stage == Stage.OPEN)
+                    color = Color.RED.darker();
+                else
+                    color = Color.BLACK;
+            }
+        }
+        else {
+            int curr = getRobot().getPosition();
+            if(u == curr || u == goal) {
+                if(u == curr && u == goal) {
+                    color = Color.GREEN.darker();
+                }
+                else {
+                    color = Color.GREEN;
+                }
+            }
+            else if(onPath) {
+                if(stage == Stage.NEW) {
+                    color = Color.CYAN.darker();
+                }
+                else if(stage == Stage.OPEN) {
+                    color = Color.MAGENTA;
+                }
+                else {
+                    color = Color.CYAN;
+                }
+            }
+            else {
+                if(stage == Stage.NEW) {
+                    color = Color.LIGHT_GRAY;
+                }
+                else if(stage == Stage.OPEN) {
+                    color = new Color(255, 63, 63);
+                }
+                else {
+                    color = Color.WHITE;
+                }
+            }
+        }
+        MutableGridPanelCell gpc = new MutableGridPanelCell();
+        gpc.setColor(color);
+        gpc.setArrowX(arrowX);
+        gpc.setArrowY(arrowY);
+        gpc.setToolTip("dist: " + getDist(u) + "\nnext: " + getNext(u) + "\nstage: " + getStage(u));
+        return gpc;
+    }
+
+    protected DijkstraPlannerHelper(int n)
+    {
+        super();
+        stage = new Stage[n];
+        dist = new double[n];
+        next = new int[n];
+        stamp = new int[n];
+        epoch = 1;
+    }
+}
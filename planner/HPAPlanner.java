@@ -0,0 +1,224 @@
+package planner;
+
+import java.util.*;
+import java.awt.Color;
+
+import gridpanel.GridPanelCell;
+import gridpanel.MutableGridPanelCell;
+import graph.AbstractGraph;
+import graph.ClusterAbstraction;
+import graph.GenGraph;
+import graph.GridGraph;
+import graph.Heuristic;
+import planner.AbstractPlanner;
+import robot.Robot;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+
+/** Path-planner which uses hierarchical path-finding (HPA*).
+
+    The robot's {@link GridGraph} is abstracted by a {@link ClusterAbstraction}. A replan pins the
+    robot's node into the abstract graph, finds a path there with A* and refines each intra-edge of it
+    into grid nodes with a search confined to one cluster. Updates to the grid only make the clusters
+    they touch be recomputed, on the next replan.
+
+    Paths are usually a little longer than the shortest ones, since they have to pass through transitions.
+*/
+public class HPAPlanner extends AbstractPlanner
+{
+    /** Side of a cluster used if none is given to the constructor. */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    private Robot robot;
+    private GridGraph graph;
+    private final int clusterSize;
+    private ClusterAbstraction abstraction;
+    private Heuristic heuristic;
+    /** Next node on the path found by the last replan, for each node on that path. */
+    private final HashMap<Integer, Integer> next = new HashMap<Integer, Integer>();
+
+    /** State of the search over the abstract graph, indexed by abstract node. */
+    private double[] dist = new double[0];
+    private int[] parent = new int[0];
+    private boolean[] closed = new boolean[0];
+    private IntPriorityQueue pq;
+    /** Grid node where the robot was when the current search started. */
+    private int target;
+    private final Relaxer relaxer = new Relaxer();
+
+    /** Relaxes abstract edges into the node being expanded. Reused across expansions to avoid allocation. */
+    private class Relaxer implements IntDoubleConsumer {
+        int u;
+
+        public void accept(int v, double w) {
+            double dist2 = dist[u] + w;
+            if(dist2 < dist[v]) {
+                dist[v] = dist2;
+                parent[v] = u;
+                closed[v] = false;
+                pq.push(v, dist2 + heuristic.estimate(abstraction.getCell(v), target));
+            }
+        }
+    }
+
+    /**
+        @param clusterSize Side of the square clusters the grid is divided into.
+    */
+    public HPAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, int clusterSize) {
+        this.goal = goal;
+        this.callback = callback;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "HPAPlanner");
+        this.clusterSize = clusterSize;
+        resetRobot(robot);
+    }
+    public HPAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, DEFAULT_CLUSTER_SIZE);
+    }
+    public HPAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
+    public HPAPlanner(int goal, Robot robot) {
+        this(goal, robot, new AbstractPlanner.Callback());
+    }
+
+    public Robot getRobot() {
+        return robot;
+    }
+    public ClusterAbstraction getAbstraction() {
+        return abstraction;
+    }
+    synchronized public void resetRobot(Robot robot) {
+    /* Reset Planner */
+        AbstractGraph g = robot.getGraph();
+        if(!(g instanceof GridGraph))
+            throw new IllegalArgumentException("HPAPlanner needs a robot whose graph is a GridGraph, not " + g);
+        if(abstraction != null)
+            abstraction.detach();
+        this.robot = robot;
+        this.graph = (GridGraph)g;
+        this.heuristic = graph.getHeuristic();
+        abstraction = new ClusterAbstraction(graph, clusterSize);
+        abstraction.pin(goal);
+        replan();
+    }
+
+    public int getNext(int u) {
+        Integer v = next.get(u);
+        return v == null ? -1 : v;
+    }
+
+    protected void examineUpdates(Set<Integer> l) {}
+
+    public void reset() {
+        replan();
+    }
+
+    /** Plan a path over the abstract graph and refine it. Return the number of abstract nodes expanded. */
+    synchronized public long replan()
+    {
+        System.err.println("Replanning");
+        target = robot.getPosition();
+        next.clear();
+        abstraction.pin(target);
+        abstraction.repair();
+        long pops = 0;
+        try {
+            int src = abstraction.getNode(goal), dst = abstraction.getNode(target);
+            pops = search(src, dst);
+            if(closed[dst])
+                refine(dst);
+        }
+        finally {
+            abstraction.unpin(target);
+        }
+        callback.pathUpdate();
+        return pops;
+    }
+
+    /** A* over the abstract graph from {@code src} until {@code dst} is expanded. Return the number of expansions. */
+    private long search(int src, int dst) {
+        GenGraph abstractGraph = abstraction.getGraph();
+        int n = abstractGraph.size();
+        if(dist.length < n) {
+            dist = new double[n];
+            parent = new int[n];
+            closed = new boolean[n];
+            pq = queueFactory.create(n);
+        }
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        Arrays.fill(closed, false);
+        pq.clear();
+        dist[src] = 0;
+        parent[src] = -1;
+        pq.push(src, heuristic.estimate(abstraction.getCell(src), target));
+        long pops;
+        for(pops = 0; !pq.isEmpty(); ++pops) {
+            int u = pq.pop();
+            closed[u] = true;
+            if(u == dst)
+                break;
+            relaxer.u = u;
+            abstractGraph.forEachSucc(u, relaxer);
+        }
+        return pops;
+    }
+
+    /** Turn the abstract path from {@code dst} back to the goal into {@link #next} pointers between grid nodes. */
+    private void refine(int dst) {
+        List<Integer> segment = new ArrayList<Integer>();
+        for(int a = dst; parent[a] != -1; a = parent[a]) {
+            int u = abstraction.getCell(a), v = abstraction.getCell(parent[a]);
+            segment.clear();
+            if(abstraction.getCluster(u) != abstraction.getCluster(v))
+                segment.add(v);
+            else
+                abstraction.findPath(u, v, segment);
+            for(int w: segment) {
+                next.put(u, w);
+                u = w;
+            }
+        }
+        next.put(goal, goal);
+    }
+
+    public GridPanelCell getGridPanelCell(int u, boolean onPath) {
+        int v = getNext(u);
+        int type = graph.getNode(u).getType();
+        int arrowX = 0, arrowY = 0;
+        if(v != -1) {
+            arrowX = graph.diffJ(u, v);
+            arrowY = graph.diffI(u, v);
+        }
+        boolean isAbstract = abstraction.getNode(u) != -1;
+
+        Color color;
+        if(type > 0) {
+            color = onPath ? Color.BLUE.darker() : Color.BLACK;
+        }
+        else {
+            int curr = robot.getPosition();
+            if(u == curr || u == goal) {
+                if(u == curr && u == goal)
+                    color = Color.GREEN.darker();
+                else
+                    color = Color.GREEN;
+            }
+            else if(onPath) {
+                color = isAbstract ? Color.MAGENTA : Color.CYAN;
+            }
+            else {
+                color = isAbstract ? Color.ORANGE : Color.WHITE;
+            }
+        }
+        MutableGridPanelCell gpc = new MutableGridPanelCell();
+        gpc.setColor(color);
+        gpc.setArrowX(arrowX);
+        gpc.setArrowY(arrowY);
+        gpc.setToolTip("cluster: " + abstraction.getCluster(u) + "\nnext: " + v
+            + "\nabstract node: " + abstraction.getNode(u));
+        return gpc;
+    }
+}
@@ -0,0 +1,303 @@
+package planner;
+
+import java.util.*;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+
+import graph.AbstractGraph;
+import graph.Edge;
+import graph.GridGraph;
+import graph.Heuristic;
+import planner.AbstractPlanner;
+import robot.Robot;
+import util.IndexedHeap;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+
+/** Path-planner which uses Jump Point Search on a {@link GridGraph}.
+
+    This is {@link AStarPlanner} with symmetry pruning: instead of pushing every neighbor of an
+    expanded node, it scans in straight and diagonal lines and only pushes the jump points found,
+    i.e. nodes where an optimal path may have to turn because of a node of another type.
+    Pruning is only valid where edge weights are uniform, so a node which has a neighbor of different
+    occupancy ends every scan and is expanded like in plain A*, with all of its neighbors.
+    On graphs which aren't {@link GridGraph}s every node is expanded that way.
+
+    Jump points are linked to the previous jump point towards the goal, which may be many nodes away;
+    {@link #getNext} returns the first node on the line between them, and after each search the nodes
+    between consecutive jump points on the robot's path are filled in.
+*/
+public class JPSPlanner extends DijkstraPlannerHelper
+{
+    private IntPriorityQueue pq;
+    private Robot robot;
+    private AbstractGraph graph;
+    /** {@link #graph} if it is a {@link GridGraph}, otherwise null. */
+    private GridGraph grid;
+    private int rows, cols;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private final Heuristic givenHeuristic;
+    private Heuristic heuristic;
+    /** Node where the robot was when the current search started. */
+    private int target;
+    /** Type of the goal; only nodes of this type can be on a path. */
+    private int regionType;
+    /** Whether every edge of {@link #grid} weighs as much as its length during the current search. */
+    private boolean unitCost;
+    /** Cost of the line scanned by the last call to {@link #jump}. */
+    private double jumpCost;
+    private final Relaxer relaxer = new Relaxer();
+
+    /** Relaxes edges into the node being expanded. Reused across expansions to avoid allocation. */
+    private class Relaxer implements IntDoubleConsumer {
+        int u;
+
+        public void accept(int v, double w) {
+            relax(u, v, getDist(u) + w);
+        }
+    }
+
+    /**
+        @param heuristic Estimate of distance between nodes. If null, the graph's
+            {@linkplain AbstractGraph#getHeuristic own heuristic} is used.
+    */
+    public JPSPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic) {
+        super(robot.getGraph().size());
+        this.goal = goal;
+        this.callback = callback;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "JPSPlanner");
+        this.givenHeuristic = heuristic;
+        resetRobot(robot);
+    }
+    public JPSPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, null);
+    }
+    public JPSPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
+    public JPSPlanner(int goal, Robot robot) {
+        this(goal, robot, new AbstractPlanner.Callback());
+    }
+
+    public Robot getRobot() {
+        return robot;
+    }
+    public Heuristic getHeuristic() {
+        return heuristic;
+    }
+    synchronized public void resetRobot(Robot robot) {
+    /* Reset Planner */
+        this.robot = robot;
+        this.graph = robot.getGraph();
+        if(graph instanceof GridGraph) {
+            grid = (GridGraph)graph;
+            rows = grid.getRows();
+            cols = grid.getCols();
+        }
+        else {
+            grid = null;
+        }
+        this.heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+        pq = queueFactory.create(graph.size());
+        replan();
+    }
+
+    protected void examineUpdates(Set<Integer> l) {}
+
+    public void reset() {
+        replan();
+    }
+
+    /** First node on the line from {@code u} to the jump point it is linked to. */
+    @Override
+    public int getNext(int u) {
+        int v = super.getNext(u);
+        if(v < 0 || v == u || grid == null)
+            return v;
+        return u + Integer.signum(grid.diffI(u, v)) * cols + Integer.signum(grid.diffJ(u, v));
+    }
+
+    /** Search from the goal until the robot's node is expanded. Return the number of expansions. */
+    synchronized public long replan()
+    {
+        System.err.println("Replanning");
+        target = robot.getPosition();
+        if(grid != null) {
+            regionType = grid.getType(goal);
+            unitCost = grid.isUnitCost();
+        }
+        setAllDistNextStage(Double.POSITIVE_INFINITY, -1, Stage.NEW);
+        setDistNextStage(goal, 0, goal, Stage.OPEN);
+        pq.clear();
+        pq.push(goal, heuristic.estimate(goal, target));
+
+        long pops;
+        for(pops = 0; !pq.isEmpty(); ++pops)
+        {
+            double prio = pq.topPriority();
+            int u = pq.pop();
+            if(getStage(u) != Stage.OPEN)
+                throw new RuntimeException("Stage " + getStage(u) + " node found in priority queue");
+            else if(abs(prio - getDist(u) - heuristic.estimate(u, target)) >= IndexedHeap.EPS)
+                throw new RuntimeException("Mismatch between priority queue ("
+                    + prio + ") and f[" + u + "] (" + (getDist(u) + heuristic.estimate(u, target)) + ")");
+            setStage(u, Stage.CLOSED);
+            if(u == target) {
+                fillPath();
+                break;
+            }
+            expand(u);
+        }
+        callback.pathUpdate();
+        return pops;
+    }
+
+    private void relax(int u, int v, double dist2) {
+        if(getStage(v) == Stage.NEW || dist2 < getDist(v)) {
+            setDistNextStage(v, dist2, u, Stage.OPEN);
+            pq.push(v, dist2 + heuristic.estimate(v, target));
+        }
+    }
+
+    private void expand(int u) {
+        int p = super.getNext(u);
+        if(grid == null || !isUniform(u)) {
+            relaxer.u = u;
+            graph.forEachPred(u, relaxer);
+            return;
+        }
+        int i = u / cols, j = u % cols;
+        if(p == u) {
+            for(int di = -1; di <= 1; ++di)
+                for(int dj = -1; dj <= 1; ++dj)
+                    if(di != 0 || dj != 0)
+                        jumpFrom(u, di, dj);
+            return;
+        }
+        // direction of travel away from the goal
+        int di = Integer.signum(grid.diffI(p, u)), dj = Integer.signum(grid.diffJ(p, u));
+        if(di != 0 && dj != 0) {
+            jumpFrom(u, di, 0);
+            jumpFrom(u, 0, dj);
+            jumpFrom(u, di, dj);
+            if(!passable(i - di, j))
+                jumpFrom(u, -di, dj);
+            if(!passable(i, j - dj))
+                jumpFrom(u, di, -dj);
+        }
+        else if(di == 0) {
+            jumpFrom(u, 0, dj);
+            if(!passable(i + 1, j))
+                jumpFrom(u, 1, dj);
+            if(!passable(i - 1, j))
+                jumpFrom(u, -1, dj);
+        }
+        else {
+            jumpFrom(u, di, 0);
+            if(!passable(i, j + 1))
+                jumpFrom(u, di, 1);
+            if(!passable(i, j - 1))
+                jumpFrom(u, di, -1);
+        }
+    }
+
+    private void jumpFrom(int u, int di, int dj) {
+        int v = jump(u, di, dj);
+        if(v >= 0)
+            relax(u, v, getDist(u) + jumpCost);
+    }
+
+    /** Scan from {@code u} in direction ({@code di}, {@code dj}) and return the first jump point,
+        or -1 if the scan runs into a node of another type. Sets {@link #jumpCost}. */
+    private int jump(int u, int di, int dj) {
+        int i = u / cols, j = u % cols;
+        double len = (di != 0 && dj != 0) ? Edge.SQRT2 : 1;
+        int prevOcc = grid.getOcc(u);
+        jumpCost = 0;
+        while(true) {
+            i += di;
+            j += dj;
+            if(!passable(i, j))
+                return -1;
+            int v = i * cols + j;
+            int occ = grid.getOcc(v);
+            jumpCost += len * max(prevOcc, occ);
+            prevOcc = occ;
+            if(isJumpPoint(v, i, j, di, dj))
+                return v;
+            if(di != 0 && dj != 0 && (scan(i, j, di, 0) || scan(i, j, 0, dj)))
+                return v;
+        }
+    }
+
+    /** Whether a straight scan from ({@code i}, {@code j}) finds a jump point. */
+    private boolean scan(int i, int j, int di, int dj) {
+        while(true) {
+            i += di;
+            j += dj;
+            if(!passable(i, j))
+                return false;
+            if(isJumpPoint(i * cols + j, i, j, di, dj))
+                return true;
+        }
+    }
+
+    /** Whether a scan in direction ({@code di}, {@code dj}) must stop at node {@code v} = ({@code i}, {@code j}):
+        {@code v} is the robot's node, has a forced neighbor, or has non-uniform edge weights. */
+    private boolean isJumpPoint(int v, int i, int j, int di, int dj) {
+        if(v == target || !isUniform(v))
+            return true;
+        if(di == 0)
+            return (!passable(i + 1, j) && passable(i + 1, j + dj))
+                || (!passable(i - 1, j) && passable(i - 1, j + dj));
+        else if(dj == 0)
+            return (!passable(i, j + 1) && passable(i + di, j + 1))
+                || (!passable(i, j - 1) && passable(i + di, j - 1));
+        else
+            return (!passable(i - di, j) && passable(i - di, j + dj))
+                || (!passable(i, j - dj) && passable(i + di, j - dj));
+    }
+
+    /** Whether ({@code i}, {@code j}) is inside the grid and has the goal's type. */
+    private boolean passable(int i, int j) {
+        return i >= 0 && i < rows && j >= 0 && j < cols && grid.getType(i * cols + j) == regionType;
+    }
+
+    /** Whether every edge out of {@code u} has the same weight per unit length. */
+    private boolean isUniform(int u) {
+        if(unitCost)
+            return true;
+        int i = u / cols, j = u % cols;
+        int occ = grid.getOcc(u), type = grid.getType(u);
+        for(int i2 = max(i - 1, 0); i2 <= i + 1 && i2 < rows; ++i2)
+            for(int j2 = max(j - 1, 0); j2 <= j + 1 && j2 < cols; ++j2) {
+                int v = i2 * cols + j2;
+                if(grid.getType(v) == type && grid.getOcc(v) != occ)
+                    return false;
+            }
+        return true;
+    }
+
+    /** Link every node between consecutive jump points on the robot's path to the next jump point. */
+    private void fillPath() {
+        if(grid == null)
+            return;
+        for(int u = target; u != goal; ) {
+            int p = super.getNext(u);
+            int step = Integer.signum(grid.diffI(u, p)) * cols + Integer.signum(grid.diffJ(u, p));
+            double len = grid.norm(u, u + step) == 2 ? Edge.SQRT2 : 1;
+            double dist = getDist(u);
+            int prevOcc = grid.getOcc(u);
+            for(int v = u + step; v != p; v += step) {
+                int occ = grid.getOcc(v);
+                dist -= len * max(prevOcc, occ);
+                prevOcc = occ;
+                setDistNextStage(v, dist, p, getStage(v));
+            }
+            u = p;
+        }
+    }
+}
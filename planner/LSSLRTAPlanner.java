@@ -0,0 +1,311 @@
+package planner;
+
+import java.util.*;
+import java.awt.Color;
+
+import gridpanel.GridPanelCell;
+import gridpanel.MutableGridPanelCell;
+import graph.AbstractGraph;
+import graph.GridGraph;
+import graph.Heuristic;
+import planner.AbstractPlanner;
+import robot.Robot;
+import util.IntDoubleConsumer;
+import util.IntPriorityQueue;
+import util.QueueUtil;
+
+/** Real-time path-planner which uses Local Search Space LRTA* (LSS-LRTA*).
+
+    A replan runs A* forwards from the robot's node for at most {@code lookahead} expansions. Then the
+    heuristic value of every expanded node is raised to the distance, through expanded nodes, to the
+    queued node with the least {@code g + h} plus that node's heuristic value, and the robot follows the
+    path to that node. The learned values are kept across replans in one {@code double[]}, so that the
+    robot doesn't get stuck in dead ends, and the next replan only happens when the robot reaches the end
+    of the path or something changes. Search state is stamped with a search number instead of being
+    cleared, so the work done by a replan only depends on {@code lookahead}, not on the size of the graph.
+
+    Paths are usually longer than the shortest ones, and no bound is given on how much longer.
+    Learned values stay admissible if edges only get heavier; after an edge gets lighter they may
+    overestimate, and the robot still reaches the goal but may take a longer way. If the goal can't be
+    reached, this is only noticed once a search expands every node the robot can reach.
+*/
+public class LSSLRTAPlanner extends AbstractPlanner
+{
+    /** Number of expansions per replan used if none is given to the constructor. */
+    public static final int DEFAULT_LOOKAHEAD = 64;
+
+    private Robot robot;
+    private AbstractGraph graph;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private final Heuristic givenHeuristic;
+    private Heuristic heuristic;
+    private final int lookahead;
+    private IntPriorityQueue pq;
+    /** Learned estimate of the distance from each node to the goal, or NaN if nothing was learned yet. */
+    private double[] h;
+
+    /** Number of the current search. A node's entries below are valid only if its stamp equals it. */
+    private int search;
+    /** Search in which each node was reached. */
+    private int[] seen;
+    /** Search in which each node was expanded. */
+    private int[] closed;
+    /** Search whose path each node is on. */
+    private int[] onPath;
+    private double[] g;
+    private int[] parent;
+    /** Next node on the path of the search, for nodes on that path; -1 for its last node. */
+    private int[] next;
+    /** Nodes expanded by the current search. */
+    private int[] expanded;
+    private int expandedCount;
+    /** Nodes left in the queue after the search. */
+    private int[] frontier = new int[16];
+
+    private final Relaxer relaxer = new Relaxer();
+    private final Learner learner = new Learner();
+
+    /** Relaxes edges out of the node being expanded. Reused across expansions to avoid allocation. */
+    private class Relaxer implements IntDoubleConsumer {
+        int u;
+
+        public void accept(int v, double w) {
+            if(closed[v] == search || Double.isInfinite(w))
+                return;
+            double g2 = g[u] + w;
+            if(seen[v] != search || g2 < g[v]) {
+                seen[v] = search;
+                g[v] = g2;
+                parent[v] = u;
+                pq.push(v, g2 + getH(v));
+            }
+        }
+    }
+
+    /** Lowers the heuristic values of expanded predecessors of the node being learned from. */
+    private class Learner implements IntDoubleConsumer {
+        int v;
+
+        public void accept(int p, double w) {
+            if(closed[p] != search)
+                return;
+            double h2 = w + getH(v);
+            if(h2 < h[p]) {
+                h[p] = h2;
+                pq.push(p, h2);
+            }
+        }
+    }
+
+    /**
+        @param heuristic Estimate of distance between nodes, which the planner starts learning from.
+            If null, the graph's {@linkplain AbstractGraph#getHeuristic own heuristic} is used.
+        @param lookahead Maximum number of expansions per replan; at least 1.
+    */
+    public LSSLRTAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic, int lookahead) {
+        if(lookahead < 1)
+            throw new IllegalArgumentException("lookahead must be at least 1, got " + lookahead);
+        this.goal = goal;
+        this.callback = callback;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "LSSLRTAPlanner");
+        this.givenHeuristic = heuristic;
+        this.lookahead = lookahead;
+        resetRobot(robot);
+    }
+    public LSSLRTAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(goal, robot, callback, queueFactory, null, DEFAULT_LOOKAHEAD);
+    }
+    public LSSLRTAPlanner(int goal, Robot robot, AbstractPlanner.Callback callback) {
+        this(goal, robot, callback, QueueUtil.HEAP);
+    }
+    public LSSLRTAPlanner(int goal, Robot robot) {
+        this(goal, robot, new AbstractPlanner.Callback());
+    }
+
+    public Robot getRobot() {
+        return robot;
+    }
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    synchronized public void resetRobot(Robot robot) {
+    /* Reset Planner */
+        this.robot = robot;
+        this.graph = robot.getGraph();
+        this.heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+        int n = graph.size();
+        pq = queueFactory.create(n);
+        h = new double[n];
+        seen = new int[n];
+        closed = new int[n];
+        onPath = new int[n];
+        g = new double[n];
+        parent = new int[n];
+        next = new int[n];
+        expanded = new int[lookahead];
+        search = 0;
+        reset();
+    }
+
+    synchronized public void reset() {
+        Arrays.fill(h, Double.NaN);
+        callback.fullUpdate();
+        replan();
+    }
+
+    /** Learned estimate of the distance from {@code u} to the goal. */
+    public double getH(int u) {
+        double hu = h[u];
+        return Double.isNaN(hu) ? heuristic.estimate(u, goal) : hu;
+    }
+
+    /** Next node on the path found by the last replan, or -1 if {@code u} isn't on it or is its last node. */
+    public int getNext(int u) {
+        return onPath[u] == search ? next[u] : -1;
+    }
+
+    /** Path found by the last replan from {@code u} onwards; it ends at the goal only if the search reached it. */
+    @Override
+    public List<Integer> getPath(int u) {
+        List<Integer> l = new ArrayList<Integer>();
+        if(onPath[u] != search)
+            return l;
+        for(; u != -1; u = next[u])
+            l.add(u);
+        return l;
+    }
+
+    /** Infinity, since there is no bound, unless the robot's node is known to have no path to the goal. */
+    @Override
+    public double getEpsilon() {
+        // no path at all is as good as it gets, so that move(int, Budget) reports it
+        return Double.isInfinite(getH(robot.getPosition())) ? 1 : Double.POSITIVE_INFINITY;
+    }
+
+    /** Whether the robot has reached the end of the path found by the last replan, or left it. */
+    @Override
+    public boolean isImprovable() {
+        return getNext(robot.getPosition()) == -1;
+    }
+
+    protected void examineUpdates(Set<Integer> l) {}
+
+    synchronized public long replan() {
+        return replan(Budget.expansions(lookahead));
+    }
+
+    /** Search at most {@code lookahead} expansions ahead of the robot, or fewer if {@code budget} runs out,
+        learn from the search and keep the path to the best node found. Return the number of expansions. */
+    @Override
+    synchronized public long replan(Budget budget)
+    {
+        if(++search == Integer.MAX_VALUE) {
+            Arrays.fill(seen, 0);
+            Arrays.fill(closed, 0);
+            Arrays.fill(onPath, 0);
+            search = 1;
+        }
+        heuristic.refresh();
+        int s = robot.getPosition();
+        seen[s] = search;
+        g[s] = 0;
+        parent[s] = -1;
+        pq.clear();
+        pq.push(s, getH(s));
+
+        expandedCount = 0;
+        while(!pq.isEmpty() && pq.top() != goal && expandedCount < lookahead && !budget.isExhausted(expandedCount))
+        {
+            int u = pq.pop();
+            closed[u] = search;
+            expanded[expandedCount++] = u;
+            relaxer.u = u;
+            graph.forEachSucc(u, relaxer);
+        }
+        int target = pq.isEmpty() ? -1 : pq.top();
+
+        learn();
+        if(target != -1) {
+            next[target] = -1;
+            onPath[target] = search;
+            for(int u = target; u != s; u = parent[u]) {
+                next[parent[u]] = u;
+                onPath[parent[u]] = search;
+                callback.nodeUpdate(u);
+            }
+        }
+        callback.pathUpdate();
+        return expandedCount;
+    }
+
+    /** Set the heuristic value of each expanded node to its distance to the queued nodes, with Dijkstra's
+        algorithm run backwards from them. Expanded nodes which can't reach any queued node get infinity. */
+    private void learn() {
+        int frontierCount = 0;
+        while(!pq.isEmpty()) {
+            if(frontierCount == frontier.length)
+                frontier = Arrays.copyOf(frontier, 2 * frontierCount);
+            frontier[frontierCount++] = pq.pop();
+        }
+        for(int k=0; k < expandedCount; ++k) {
+            h[expanded[k]] = Double.POSITIVE_INFINITY;
+            callback.nodeUpdate(expanded[k]);
+        }
+        for(int k=0; k < frontierCount; ++k)
+            pq.push(frontier[k], getH(frontier[k]));
+        int left = expandedCount;
+        while(left > 0 && !pq.isEmpty()) {
+            int v = pq.pop();
+            if(closed[v] == search)
+                --left;
+            learner.v = v;
+            graph.forEachPred(v, learner);
+        }
+        pq.clear();
+    }
+
+    public GridPanelCell getGridPanelCell(int u, boolean onPath) {
+        int v = getNext(u);
+        int type = 0;
+        int arrowX = 0, arrowY = 0;
+        boolean isClosed = closed[u] == search;
+
+        if(graph instanceof GridGraph) {
+            GridGraph gridGraph = (GridGraph)graph;
+            type = gridGraph.getNode(u).getType();
+            if(v != -1) {
+                arrowX = gridGraph.diffJ(u, v);
+                arrowY = gridGraph.diffI(u, v);
+            }
+        }
+
+        Color color;
+        if(type > 0) {
+            color = onPath ? Color.BLUE.darker() : Color.BLACK;
+        }
+        else {
+            int curr = robot.getPosition();
+            if(u == curr || u == goal) {
+                color = u == curr && u == goal ? Color.GREEN.darker() : Color.GREEN;
+            }
+            else if(onPath) {
+                color = Color.CYAN;
+            }
+            else if(isClosed) {
+                color = Color.ORANGE;
+            }
+            else {
+                color = Double.isNaN(h[u]) ? Color.WHITE : Color.LIGHT_GRAY;
+            }
+        }
+        MutableGridPanelCell gpc = new MutableGridPanelCell();
+        gpc.setColor(color);
+        gpc.setArrowX(arrowX);
+        gpc.setArrowY(arrowY);
+        gpc.setToolTip("h: " + getH(u) + "\nlearned: " + !Double.isNaN(h[u]));
+        return gpc;
+    }
+}
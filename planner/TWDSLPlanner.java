@@ -5,11 +5,14 @@ import java.awt.Color;
 import static java.lang.Math.abs;
 import static java.lang.Math.min;
 import util.PQ;
+import util.IntPriorityQueue;
+import util.QueueUtil;
 import dstar.DStarLite;
 
 import gridpanel.GridPanelCell;
 import gridpanel.MutableGridPanelCell;
 import graph.GridGraph;
+import graph.Heuristic;
 import planner.AbstractPlanner;
 import robot.Robot;
 import robot.GridRobot;
@@ -22,6 +25,8 @@ public class TWDSLPlanner extends AbstractPlanner
     private GridGraph graph;
     private DStarLite dstar, rdstar;
     private DStarLite.Callback dstarCallback;
+    /** Heuristic given to the constructor, or null to use the graph's own. */
+    private Heuristic givenHeuristic;
 
     public GridRobot getRobot() {
         return robot;
@@ -44,12 +49,26 @@ public class TWDSLPlanner extends AbstractPlanner
         };
     }
 
-    public TWDSLPlanner(int start, int goal, GridRobot robot, AbstractPlanner.Callback callback) {
+    /**
+        @param heuristic Estimate of distance between nodes, used to focus both searches. If null, the graph's
+            {@linkplain graph.AbstractGraph#getHeuristic own heuristic} is used.
+    */
+    public TWDSLPlanner(int start, int goal, GridRobot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory, Heuristic heuristic) {
         this.goal = goal;
         this.start = start;
+        this.queueFactory = QueueUtil.requireExact(queueFactory, "TWDSLPlanner");
+        this.givenHeuristic = heuristic;
         setCallback(callback);
         resetRobot(robot);
     }
+    public TWDSLPlanner(int start, int goal, GridRobot robot, AbstractPlanner.Callback callback,
+            IntPriorityQueue.Factory queueFactory) {
+        this(start, goal, robot, callback, queueFactory, null);
+    }
+    public TWDSLPlanner(int start, int goal, GridRobot robot, AbstractPlanner.Callback callback) {
+        this(start, goal, robot, callback, QueueUtil.HEAP);
+    }
     public TWDSLPlanner(int start, int goal, GridRobot robot) {
         this(start, goal, robot, new AbstractPlanner.Callback());
     }
@@ -70,8 +89,9 @@ public class TWDSLPlanner extends AbstractPlanner
         synchronized(resetRobotLock) {
             this.robot = robot;
             graph = robot.getGraph();
-            dstar = new DStarLite(goal, graph);
-            rdstar = new DStarLite(start, graph);
+            Heuristic heuristic = givenHeuristic != null ? givenHeuristic : graph.getHeuristic();
+            dstar = new DStarLite(goal, graph, new DStarLite.Callback(), queueFactory, heuristic);
+            rdstar = new DStarLite(start, graph, new DStarLite.Callback(), queueFactory, heuristic);
             dstar.setCallback(dstarCallback);
             rdstar.setCallback(dstarCallback);
         }
@@ -92,6 +112,7 @@ public class TWDSLPlanner extends AbstractPlanner
         rdstar.updateNode(u);
     }
     protected void examineUpdates(Set<Integer> l) {
+        dstar.setStart(robot.getPosition());
         dstar.examineUpdates(l);
         rdstar.examineUpdates(l);
     }
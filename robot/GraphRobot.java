@@ -12,6 +12,13 @@ public class GraphRobot implements Robot{
     protected GenGraph graphLocal;
     protected AbstractGraph graphRemote;
     protected int position;
+    /** Number of the robot's reader of the remote graph's change journal, if the remote graph is a {@link GenGraph}. */
+    protected int journalReader;
+    /** Edges changed in the remote graph which haven't been near the robot since they changed. */
+    protected TreeSet<Edge2> pendingEdges;
+    /** Edges of {@link #pendingEdges} by each of their ends. Lists may still hold edges which were
+        handled through their other end. */
+    protected HashMap<Integer, List<Edge2>> pendingByNode;
 
     public int getPosition() {
         return position;
@@ -29,7 +36,25 @@ public class GraphRobot implements Robot{
     public GraphRobot(AbstractGraph graph, int position) {
         this.graphRemote = graph;
         this.position = position;
-        this.graphLocal = graph.toGenGraph();
+        synchronized(graph) {
+            this.graphLocal = graph.toGenGraph();
+            if(graph instanceof GenGraph) {
+                journalReader = ((GenGraph)graph).openJournalReader();
+                pendingEdges = new TreeSet<Edge2>();
+                pendingByNode = new HashMap<Integer, List<Edge2>>();
+            }
+        }
+    }
+
+    /** Stop reading the remote graph's change journal, so that it no longer keeps changes for this robot.
+        Call this when the robot is replaced. Later calls to {@link #getUpdatedNodes} still work, but
+        compare the whole neighborhood with the remote graph. */
+    public void close() {
+        if(pendingEdges != null) {
+            ((GenGraph)graphRemote).closeJournalReader(journalReader);
+            pendingEdges = null;
+            pendingByNode = null;
+        }
     }
 
     public static class EdgeStatus {
@@ -111,6 +136,8 @@ public class GraphRobot implements Robot{
     }
 
     public List<EdgeStatus> getUpdatedEdges(int radius) {
+        if(pendingEdges != null)
+            return getJournaledEdges(radius);
         synchronized(graphRemote) {
             Iterable<Integer> nearbyNodes = getNearbyNodes(radius);
             //System.err.println("nearbyNodes: " + nearbyNodes);
@@ -181,6 +208,63 @@ public class GraphRobot implements Robot{
         }
     }
 
+    /** Find updated edges using the remote graph's change journal.
+        Only edges which changed since the last call are examined, so nothing is allocated per edge
+        of the neighborhood. Changed edges which aren't near the robot are kept until they are, and are
+        looked up by the nearby nodes, so edges far from the robot cost nothing per call. */
+    protected List<EdgeStatus> getJournaledEdges(int radius) {
+        final GenGraph remote = (GenGraph)graphRemote;
+        synchronized(remote) {
+            remote.readChanges(journalReader, new GenGraph.ChangeVisitor() {
+                @Override
+                public void accept(int u, int v) {
+                    Edge2 e = new Edge2(u, v);
+                    if(pendingEdges.add(e)) {
+                        addPending(u, e);
+                        addPending(v, e);
+                    }
+                }
+            });
+            List<EdgeStatus> output = new ArrayList<EdgeStatus>();
+            if(pendingEdges.isEmpty())
+                return output;
+            // handle the edges in the same order as they are kept in
+            TreeSet<Edge2> nearbyEdges = new TreeSet<Edge2>();
+            for(int x: getNearbyNodes(radius)) {
+                List<Edge2> l = pendingByNode.remove(x);
+                if(l == null)
+                    continue;
+                for(Edge2 e: l)
+                    if(pendingEdges.remove(e))
+                        nearbyEdges.add(e);
+            }
+            for(Edge2 e: nearbyEdges) {
+                Double wl = graphLocal.hasEdge(e.u, e.v) ? graphLocal.getWeight(e.u, e.v) : null;
+                Double wr = remote.hasEdge(e.u, e.v) ? remote.getWeight(e.u, e.v) : null;
+                if(wr == null) {
+                    if(wl != null) {
+                        output.add(new EdgeStatus(e.u, e.v, wl, null));
+                        graphLocal.breakEdge(e.u, e.v);
+                    }
+                }
+                else if(wl == null || abs(wl - wr) >= Edge.EPS) {
+                    output.add(new EdgeStatus(e.u, e.v, wl, wr));
+                    graphLocal.update(e.u, e.v, wr, false);
+                }
+            }
+            return output;
+        }
+    }
+
+    private void addPending(int x, Edge2 e) {
+        List<Edge2> l = pendingByNode.get(x);
+        if(l == null) {
+            l = new ArrayList<Edge2>(2);
+            pendingByNode.put(x, l);
+        }
+        l.add(e);
+    }
+
     public Set<Integer> getUpdatedNodes(int radius) {
         List<EdgeStatus> esl = getUpdatedEdges(radius);
         Set<Integer> output = new HashSet<Integer>();
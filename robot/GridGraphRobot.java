@@ -11,6 +11,9 @@ import static java.lang.Math.abs;
 public class GridGraphRobot implements GridRobot {
     protected GridGraph graphLocal, graphRemote;
     protected int position;
+    /** Tracks which updates to {@link #graphRemote} have been copied to {@link #graphLocal}.
+        Null if the remote graph is a snapshot, which can't change. */
+    protected GridGraph.ChangeCursor cursor;
 
     public int getPosition() {
         return position;
@@ -28,7 +31,10 @@ public class GridGraphRobot implements GridRobot {
     public GridGraphRobot(GridGraph graph, int position) {
         this.position = position;
         this.graphRemote = graph;
-        this.graphLocal = new GridGraph(graph);
+        synchronized(graph) {
+            this.graphLocal = new GridGraph(graph);
+            this.cursor = graph.isFrozen() ? null : graph.newChangeCursor();
+        }
     }
 
     public List<Integer> getNearbyNodes(int u, int radius) {
@@ -49,15 +55,24 @@ public class GridGraphRobot implements GridRobot {
         return output;
     }
 
+    /** Ask the remote graph's change journal which nodes in the sensor window changed since
+        they were last seen, so that the cost is proportional to the number of changes
+        rather than the size of the window. */
     public Set<Integer> getUpdatedNodes(int radius) {
         Set<Integer> output = new HashSet<Integer>();
+        if(cursor == null)
+            return output;
+        int cols = graphLocal.getCols();
         int u = getPosition();
-        for(int v: getNearbyNodes(u, radius)) {
-            GridGraph.Node lnode = graphLocal.getNode(v);
-            GridGraph.Node rnode = graphRemote.getNode(v);
-            if(!lnode.isSame(rnode)) {
+        int ui = u / cols, uj = u % cols;
+        List<Integer> changed = new ArrayList<Integer>();
+        graphRemote.getChangedNodes(cursor, ui - radius, uj - radius, ui + radius, uj + radius, changed);
+        for(int v: changed) {
+            GridGraph.Node node = graphRemote.getNode(v);
+            // updates which were undone since are reported too
+            if(node.getType() != graphLocal.getType(v) || node.getOcc() != graphLocal.getOcc(v)) {
                 output.addAll(getNearbyNodes(v, 1));
-                graphLocal.update(v, rnode);
+                graphLocal.update(v, node);
             }
         }
         return output;
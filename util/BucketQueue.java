@@ -0,0 +1,192 @@
+package util;
+
+import java.util.*;
+
+/** A Dial-style bucket queue of {@code int} values with non-negative {@code double} priorities.
+
+    Priorities are grouped into buckets of a fixed width; each bucket is an intrusive doubly-linked list
+    stored in {@code int} arrays, so pushing, changing a priority and removing are O(1).
+    {@link #pop} scans forward to the first non-empty bucket, which is cheap when priorities are
+    popped in roughly non-decreasing order and are spread over few buckets.
+    Infinite priorities are kept in a separate list which comes after every bucket.
+
+    Values within a bucket are popped in no particular order, so the value popped may have a priority
+    up to the bucket width above the least one. Dijkstra's algorithm and D* Lite still find shortest
+    paths if the width is at most the smallest edge weight (1 on a {@link graph.GridGraph}), since no edge
+    can then lead from a value to a lower-priority value in the same bucket.
+    That argument fails for searches ordered by {@code dist + h} ({@link planner.AStarPlanner}, focused
+    D* Lite), where an edge often leaves the priority unchanged, so their planners
+    {@linkplain QueueUtil#requireExact reject} this queue.
+*/
+public class BucketQueue implements IntPriorityQueue {
+    private final double width;
+    private double[] keys;
+    /** Absolute bucket number of each value. */
+    private long[] bucketOf;
+    private boolean[] present;
+    private int[] next, prev;
+    /** First value in each bucket, or -1. {@code head[k]} is bucket {@code origin + k}. */
+    private int[] head = new int[16];
+    private long origin;
+    /** No bucket before {@code head[cursor]} is non-empty. */
+    private int cursor;
+    /** First value with infinite priority, or -1. */
+    private int infHead = -1;
+    private int size;
+
+    private static final long INF_BUCKET = Long.MAX_VALUE;
+
+    /** @param width Range of priorities in each bucket. */
+    public BucketQueue(int capacity, double width) {
+        if(!(width > 0) || Double.isInfinite(width))
+            throw new IllegalArgumentException("bucket width must be positive, got " + width);
+        this.width = width;
+        capacity = Math.max(capacity, 1);
+        keys = new double[capacity];
+        bucketOf = new long[capacity];
+        present = new boolean[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        Arrays.fill(head, -1);
+    }
+
+    private void ensureValue(int value) {
+        if(value >= keys.length) {
+            int cap = Math.max(value + 1, 2 * keys.length);
+            keys = Arrays.copyOf(keys, cap);
+            bucketOf = Arrays.copyOf(bucketOf, cap);
+            present = Arrays.copyOf(present, cap);
+            next = Arrays.copyOf(next, cap);
+            prev = Arrays.copyOf(prev, cap);
+        }
+    }
+
+    /** Make {@code head} cover bucket {@code b} and return its index in {@code head}. */
+    private int slotFor(long b) {
+        if(size == 0) {
+            // nothing is stored, so the window can be moved anywhere
+            Arrays.fill(head, -1);
+            origin = b;
+            cursor = 0;
+        }
+        if(b < origin) {
+            long shift = origin - b;
+            if(shift > Integer.MAX_VALUE - head.length)
+                throw new IllegalArgumentException("priorities span too many buckets");
+            int[] h = new int[head.length + (int)shift];
+            Arrays.fill(h, 0, (int)shift, -1);
+            System.arraycopy(head, 0, h, (int)shift, head.length);
+            head = h;
+            origin = b;
+            cursor = 0;
+        }
+        long k = b - origin;
+        if(k >= head.length) {
+            if(k >= Integer.MAX_VALUE / 2)
+                throw new IllegalArgumentException("priorities span too many buckets");
+            int old = head.length;
+            head = Arrays.copyOf(head, (int)Math.max(k + 1, 2L * old));
+            Arrays.fill(head, old, head.length, -1);
+        }
+        if(k < cursor)
+            cursor = (int)k;
+        return (int)k;
+    }
+
+    private void link(int value) {
+        long b = bucketOf[value];
+        prev[value] = -1;
+        if(b == INF_BUCKET) {
+            next[value] = infHead;
+            if(infHead >= 0)
+                prev[infHead] = value;
+            infHead = value;
+        }
+        else {
+            int k = slotFor(b);
+            next[value] = head[k];
+            if(head[k] >= 0)
+                prev[head[k]] = value;
+            head[k] = value;
+        }
+    }
+
+    private void unlink(int value) {
+        if(prev[value] >= 0)
+            next[prev[value]] = next[value];
+        else if(bucketOf[value] == INF_BUCKET)
+            infHead = next[value];
+        else
+            head[(int)(bucketOf[value] - origin)] = next[value];
+        if(next[value] >= 0)
+            prev[next[value]] = prev[value];
+    }
+
+    public void push(int value, double priority) {
+        if(!(priority >= 0))
+            throw new IllegalArgumentException("BucketQueue needs non-negative priorities, got " + priority);
+        ensureValue(value);
+        long b = Double.isInfinite(priority) ? INF_BUCKET : (long)(priority / width);
+        if(present[value]) {
+            keys[value] = priority;
+            if(bucketOf[value] == b)
+                return;
+            unlink(value);
+            size--;
+        }
+        keys[value] = priority;
+        bucketOf[value] = b;
+        link(value);
+        present[value] = true;
+        size++;
+    }
+
+    /** Same as {@link #push(int, double)}; the second part of the priority is ignored. */
+    public void push(int value, double priority, double tieBreak) {
+        push(value, priority);
+    }
+
+    public boolean remove(int value) {
+        if(!contains(value))
+            return false;
+        unlink(value);
+        present[value] = false;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return value >= 0 && value < present.length && present[value];
+    }
+
+    public int top() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        while(cursor < head.length && head[cursor] < 0)
+            cursor++;
+        return cursor < head.length ? head[cursor] : infHead;
+    }
+
+    public double topPriority() {
+        return keys[top()];
+    }
+
+    public int pop() {
+        int value = top();
+        remove(value);
+        return value;
+    }
+
+    public void clear() {
+        while(size > 0)
+            pop();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
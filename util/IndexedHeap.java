@@ -0,0 +1,237 @@
+package util;
+
+import java.util.*;
+
+/** An indexed d-ary min-heap of {@code int} values with {@code double} priorities.
+
+    Values are small non-negative integers (typically node numbers). A value is in the heap at most once;
+    pushing a value which is already present changes its priority. A position index from value to
+    heap slot makes changing a priority (up or down) and removing a value O(d log<sub>d</sub> n),
+    and nothing is allocated per operation.
+
+    A heap created with a sparse index keeps the position index in a {@link LongDoubleHashMap} instead of an
+    array, so that its memory depends on how many values it holds rather than on how large they are.
+
+    Elements are ordered exactly like {@link PQ}: priorities which differ by less than {@link #EPS}
+    are considered equal, and ties are broken by value. Two-part priorities
+    ({@link #push(int, double, double)}) compare their second parts the same way before comparing values.
+*/
+public class IndexedHeap implements IntPriorityQueue {
+    public static final double EPS = PQ.PQElem.EPS;
+
+    private final int arity;
+    /** Value in each heap slot. */
+    private int[] heap;
+    /** Priority of the value in each heap slot. */
+    private double[] keys;
+    /** Second part of the priority of the value in each heap slot. */
+    private double[] ties;
+    /** Slot of each value, or -1 if the value is not in the heap. Null if the index is sparse. */
+    private int[] pos;
+    /** Slot of each value in the heap, if the index is sparse. */
+    private LongDoubleHashMap posMap;
+    private int size;
+
+    /** Create a 4-ary heap for values less than {@code capacity}. Larger values make the index grow. */
+    public IndexedHeap(int capacity) {
+        this(4, capacity);
+    }
+    public IndexedHeap(int arity, int capacity) {
+        this(arity, capacity, false);
+    }
+    /** @param sparseIndex Whether to index values with a hash map; {@code capacity} is then only the number
+            of values the heap has room for before it grows. */
+    public IndexedHeap(int arity, int capacity, boolean sparseIndex) {
+        if(arity < 2)
+            throw new IllegalArgumentException("arity must be at least 2");
+        this.arity = arity;
+        capacity = Math.max(capacity, 1);
+        heap = new int[capacity];
+        keys = new double[capacity];
+        ties = new double[capacity];
+        if(sparseIndex) {
+            posMap = new LongDoubleHashMap(capacity, -1);
+        }
+        else {
+            pos = new int[capacity];
+            Arrays.fill(pos, -1);
+        }
+    }
+
+    private int getPos(int value) {
+        if(posMap != null)
+            return (int)posMap.get(value);
+        return value < pos.length ? pos[value] : -1;
+    }
+    private void setPos(int value, int i) {
+        if(posMap != null)
+            posMap.put(value, i);
+        else
+            pos[value] = i;
+    }
+
+    /** Compare two-part priorities, treating parts which differ by less than {@link #EPS} as equal. */
+    public static int compareKeys(double key1, double tie1, double key2, double tie2) {
+        double diff = key1 - key2;
+        if(diff >= EPS)
+            return 1;
+        else if(diff <= -EPS)
+            return -1;
+        diff = tie1 - tie2;
+        if(diff >= EPS)
+            return 1;
+        else if(diff <= -EPS)
+            return -1;
+        else
+            return 0;
+    }
+
+    /** Whether the element in slot {@code i} comes before the element in slot {@code j}. */
+    private boolean less(int i, int j) {
+        int c = compareKeys(keys[i], ties[i], keys[j], ties[j]);
+        return c < 0 || (c == 0 && heap[i] < heap[j]);
+    }
+
+    private void swap(int i, int j) {
+        int v = heap[i];
+        heap[i] = heap[j];
+        heap[j] = v;
+        double k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        k = ties[i];
+        ties[i] = ties[j];
+        ties[j] = k;
+        setPos(heap[i], i);
+        setPos(heap[j], j);
+    }
+
+    private void siftUp(int i) {
+        while(i > 0) {
+            int parent = (i - 1) / arity;
+            if(!less(i, parent))
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while(true) {
+            int first = i * arity + 1;
+            if(first >= size)
+                break;
+            int best = first;
+            for(int c = first + 1; c < first + arity && c < size; ++c)
+                if(less(c, best))
+                    best = c;
+            if(!less(best, i))
+                break;
+            swap(i, best);
+            i = best;
+        }
+    }
+
+    private void ensureValue(int value) {
+        if(value < 0)
+            throw new IllegalArgumentException("negative value " + value);
+        if(pos != null && value >= pos.length) {
+            int old = pos.length;
+            pos = Arrays.copyOf(pos, Math.max(value + 1, 2 * old));
+            Arrays.fill(pos, old, pos.length, -1);
+        }
+    }
+
+    /** Insert {@code value} with the given priority, or change its priority if it is already present. */
+    public void push(int value, double priority) {
+        push(value, priority, 0);
+    }
+
+    public void push(int value, double priority, double tieBreak) {
+        ensureValue(value);
+        int i = getPos(value);
+        if(i < 0) {
+            if(size == heap.length) {
+                heap = Arrays.copyOf(heap, 2 * size);
+                keys = Arrays.copyOf(keys, 2 * size);
+                ties = Arrays.copyOf(ties, 2 * size);
+            }
+            i = size++;
+            heap[i] = value;
+            keys[i] = priority;
+            ties[i] = tieBreak;
+            setPos(value, i);
+            siftUp(i);
+        }
+        else {
+            keys[i] = priority;
+            ties[i] = tieBreak;
+            siftUp(i);
+            siftDown(getPos(value));
+        }
+    }
+
+    /** Remove {@code value} from the heap. Return false if it wasn't present. */
+    public boolean remove(int value) {
+        if(!contains(value))
+            return false;
+        int i = getPos(value);
+        int last = --size;
+        if(i != last) {
+            swap(i, last);
+            setPos(value, -1);
+            siftUp(i);
+            siftDown(i);
+        }
+        else {
+            setPos(value, -1);
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return value >= 0 && getPos(value) >= 0;
+    }
+
+    /** Priority of {@code value}, which must be in the heap. */
+    public double getPriority(int value) {
+        if(!contains(value))
+            throw new NoSuchElementException("value " + value + " is not in the heap");
+        return keys[getPos(value)];
+    }
+
+    /** Value with the least priority. */
+    public int top() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        return heap[0];
+    }
+
+    /** Least priority in the heap. */
+    public double topPriority() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        return keys[0];
+    }
+
+    /** Remove and return the value with the least priority. */
+    public int pop() {
+        int value = top();
+        remove(value);
+        return value;
+    }
+
+    public void clear() {
+        for(int i=0; i < size; ++i)
+            setPos(heap[i], -1);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
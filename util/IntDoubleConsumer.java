@@ -0,0 +1,7 @@
+package util;
+
+/** An operation which accepts an {@code int} and a {@code double}.
+    Used to visit (node, weight) pairs without boxing them. */
+public interface IntDoubleConsumer {
+    public void accept(int node, double weight);
+}
@@ -0,0 +1,37 @@
+package util;
+
+/** A priority queue of {@code int} values with {@code double} priorities.
+
+    Values are small non-negative integers (typically node numbers) and each value is in the queue
+    at most once: pushing a value which is already present changes its priority.
+    Implementations are listed in {@link QueueUtil}.
+*/
+public interface IntPriorityQueue {
+    /** Insert {@code value} with the given priority, or change its priority if it is already present.
+        Same as {@code push(value, priority, 0)}. */
+    public void push(int value, double priority);
+    /** Insert {@code value} with a two-part priority, or change its priority if it is already present.
+        Values are ordered by {@code priority} and then by {@code tieBreak}.
+        Queues which only order by the first part ({@link RadixHeap}, {@link BucketQueue}) ignore {@code tieBreak};
+        see {@link QueueUtil#isExact}. */
+    public void push(int value, double priority, double tieBreak);
+    /** Remove {@code value} from the queue. Return false if it wasn't present. */
+    public boolean remove(int value);
+    public boolean contains(int value);
+    /** Value with the least priority. */
+    public int top();
+    /** Priority of {@link #top}. */
+    public double topPriority();
+    /** Remove and return {@link #top}. */
+    public int pop();
+    public void clear();
+    public int size();
+    public boolean isEmpty();
+
+    /** Creates queues. Planners take a factory because they only know how many values
+        a queue must hold once they see the graph. */
+    public static interface Factory {
+        /** Create an empty queue for values less than {@code capacity}. */
+        public IntPriorityQueue create(int capacity);
+    }
+}
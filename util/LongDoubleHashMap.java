@@ -0,0 +1,141 @@
+package util;
+
+import java.util.*;
+
+/** A map from {@code long} keys to {@code double} values, with open addressing and linear probing.
+
+    Keys which aren't in the map have a default value, and putting the default value removes a key,
+    so only keys with other values take space. Nothing is boxed, and nothing is allocated per operation
+    except when the table grows. {@link Long#MIN_VALUE} marks empty slots and can't be used as a key.
+*/
+public class LongDoubleHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private double[] values;
+    /** Number of slots minus one; the number of slots is a power of 2. */
+    private int mask;
+    private int size;
+    private double defaultValue;
+
+    /** Create a map whose table has room for about {@code expected} keys before it grows. */
+    public LongDoubleHashMap(int expected, double defaultValue) {
+        this.defaultValue = defaultValue;
+        int capacity = MIN_CAPACITY;
+        while(capacity < 2L * expected && capacity < (1 << 30))
+            capacity <<= 1;
+        allocate(capacity);
+    }
+    public LongDoubleHashMap(double defaultValue) {
+        this(MIN_CAPACITY / 2, defaultValue);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new double[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    /** Mix the bits of a key, so that consecutive keys (e.g. neighbouring nodes) don't form long runs. */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+
+    /** Slot holding {@code key}, or the empty slot where it would go. */
+    private int slotOf(long key) {
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    public double getDefaultValue() {return defaultValue;}
+    /** Number of keys whose value isn't the default. */
+    public int size() {return size;}
+    public boolean isEmpty() {return size == 0;}
+
+    public double get(long key) {
+        int i = slotOf(key);
+        return keys[i] == EMPTY ? defaultValue : values[i];
+    }
+
+    public boolean containsKey(long key) {
+        return keys[slotOf(key)] != EMPTY;
+    }
+
+    /** Set the value of {@code key}; setting it to the default value removes the key. */
+    public void put(long key, double value) {
+        if(key == EMPTY)
+            throw new IllegalArgumentException("Long.MIN_VALUE can't be used as a key");
+        if(Double.compare(value, defaultValue) == 0) {
+            remove(key);
+            return;
+        }
+        int i = slotOf(key);
+        if(keys[i] == EMPTY) {
+            if(2 * (size + 1) > keys.length) {
+                grow();
+                i = slotOf(key);
+            }
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /** Remove {@code key}, so that it has the default value. Return false if it wasn't present. */
+    public boolean remove(long key) {
+        int i = slotOf(key);
+        if(keys[i] == EMPTY)
+            return false;
+        // shift later keys of the run back, so that no key is cut off from its home slot
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY)
+                break;
+            int home = hash(keys[j]) & mask;
+            // move keys[j] to i unless its home slot lies cyclically in (i, j]
+            if(i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /** Remove every key and set the default value. Takes time proportional to the size of the table,
+        which only depends on the most keys the map has held, not on the range of keys. */
+    public void clear(double defaultValue) {
+        this.defaultValue = defaultValue;
+        if(size > 0)
+            Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+    public void clear() {
+        clear(defaultValue);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(2 * oldKeys.length);
+        for(int k=0; k < oldKeys.length; ++k) {
+            if(oldKeys[k] != EMPTY) {
+                int i = slotOf(oldKeys[k]);
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+}
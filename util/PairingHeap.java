@@ -0,0 +1,188 @@
+package util;
+
+import java.util.*;
+
+/** An indexed pairing heap of {@code int} values with {@code double} priorities.
+
+    Tree links are stored in {@code int} arrays indexed by value, so nothing is allocated per operation.
+    Lowering a priority cuts the value's subtree and melds it with the root in O(1);
+    popping uses the two-pass pairing method. Elements are ordered like {@link IndexedHeap}.
+*/
+public class PairingHeap implements IntPriorityQueue {
+    private double[] keys;
+    /** Second part of each value's priority. */
+    private double[] ties;
+    /** Leftmost child of each value, or -1. */
+    private int[] child;
+    /** Right sibling of each value, or -1. */
+    private int[] sibling;
+    /** Parent of each value if it is a leftmost child, otherwise its left sibling. -1 for the root. */
+    private int[] prev;
+    private boolean[] present;
+    /** Scratch space for {@link #mergePairs}. */
+    private int[] buf;
+    private int root = -1;
+    private int size;
+
+    public PairingHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        keys = new double[capacity];
+        ties = new double[capacity];
+        child = new int[capacity];
+        sibling = new int[capacity];
+        prev = new int[capacity];
+        present = new boolean[capacity];
+        buf = new int[capacity];
+    }
+
+    private void ensureValue(int value) {
+        if(value >= keys.length) {
+            int cap = Math.max(value + 1, 2 * keys.length);
+            keys = Arrays.copyOf(keys, cap);
+            ties = Arrays.copyOf(ties, cap);
+            child = Arrays.copyOf(child, cap);
+            sibling = Arrays.copyOf(sibling, cap);
+            prev = Arrays.copyOf(prev, cap);
+            present = Arrays.copyOf(present, cap);
+            buf = new int[cap];
+        }
+    }
+
+    private boolean less(int a, int b) {
+        int c = IndexedHeap.compareKeys(keys[a], ties[a], keys[b], ties[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    /** Meld two detached trees and return the new root. */
+    private int meld(int a, int b) {
+        if(a < 0)
+            return b;
+        if(b < 0)
+            return a;
+        if(less(b, a)) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        sibling[b] = child[a];
+        if(child[a] >= 0)
+            prev[child[a]] = b;
+        prev[b] = a;
+        child[a] = b;
+        return a;
+    }
+
+    /** Detach the subtree rooted at non-root value {@code v} from its parent. */
+    private void cut(int v) {
+        int p = prev[v];
+        if(child[p] == v)
+            child[p] = sibling[v];
+        else
+            sibling[p] = sibling[v];
+        if(sibling[v] >= 0)
+            prev[sibling[v]] = p;
+        prev[v] = -1;
+        sibling[v] = -1;
+    }
+
+    /** Meld a list of siblings starting at {@code first} into one tree using two passes. */
+    private int mergePairs(int first) {
+        int n = 0;
+        for(int c = first; c >= 0; ) {
+            int next = sibling[c];
+            prev[c] = -1;
+            sibling[c] = -1;
+            buf[n++] = c;
+            c = next;
+        }
+        int m = 0;
+        for(int i=0; i+1 < n; i += 2)
+            buf[m++] = meld(buf[i], buf[i+1]);
+        if(n % 2 == 1)
+            buf[m++] = buf[n-1];
+        int r = -1;
+        for(int i = m-1; i >= 0; --i)
+            r = meld(buf[i], r);
+        return r;
+    }
+
+    public void push(int value, double priority) {
+        push(value, priority, 0);
+    }
+
+    public void push(int value, double priority, double tieBreak) {
+        ensureValue(value);
+        if(!present[value]) {
+            present[value] = true;
+            keys[value] = priority;
+            ties[value] = tieBreak;
+            child[value] = sibling[value] = prev[value] = -1;
+            root = meld(root, value);
+            size++;
+        }
+        else {
+            int c = IndexedHeap.compareKeys(priority, tieBreak, keys[value], ties[value]);
+            if(c < 0 || (c == 0 && priority < keys[value])) {
+                keys[value] = priority;
+                ties[value] = tieBreak;
+                if(value != root) {
+                    cut(value);
+                    root = meld(root, value);
+                }
+            }
+            else if(c > 0 || priority != keys[value] || tieBreak != ties[value]) {
+                remove(value);
+                push(value, priority, tieBreak);
+            }
+        }
+    }
+
+    public boolean remove(int value) {
+        if(!contains(value))
+            return false;
+        if(value == root) {
+            root = mergePairs(child[root]);
+        }
+        else {
+            cut(value);
+            root = meld(root, mergePairs(child[value]));
+        }
+        child[value] = -1;
+        present[value] = false;
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return value >= 0 && value < present.length && present[value];
+    }
+
+    public int top() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        return root;
+    }
+
+    public double topPriority() {
+        return keys[top()];
+    }
+
+    public int pop() {
+        int value = top();
+        remove(value);
+        return value;
+    }
+
+    public void clear() {
+        while(root >= 0)
+            pop();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,97 @@
+package util;
+
+/** Factories for the {@link IntPriorityQueue} implementations.
+
+    {@link #RADIX} and {@linkplain #bucket bucket} queues only order values by the first part of their
+    priority, and only cheaply if priorities are popped in non-decreasing order. That holds for Dijkstra's
+    algorithm, but not for searches ordered by {@code dist + h}, which rely on tie-breaking and push
+    priorities below the last one popped, so heuristic planners {@linkplain #requireExact reject} them.
+*/
+public class QueueUtil
+{
+    /** 4-ary {@link IndexedHeap}. This is the default for all planners. */
+    public static final IntPriorityQueue.Factory HEAP = new IntPriorityQueue.Factory() {
+        public IntPriorityQueue create(int capacity) {
+            return new IndexedHeap(4, capacity);
+        }
+    };
+    /** Binary {@link IndexedHeap}. */
+    public static final IntPriorityQueue.Factory BINARY = new IntPriorityQueue.Factory() {
+        public IntPriorityQueue create(int capacity) {
+            return new IndexedHeap(2, capacity);
+        }
+    };
+    public static final IntPriorityQueue.Factory PAIRING = new IntPriorityQueue.Factory() {
+        public IntPriorityQueue create(int capacity) {
+            return new PairingHeap(capacity);
+        }
+    };
+    /** {@link RadixHeap}; only for {@link planner.DijkstraPlanner}. */
+    public static final IntPriorityQueue.Factory RADIX = new IntPriorityQueue.Factory() {
+        public IntPriorityQueue create(int capacity) {
+            return new RadixHeap(capacity);
+        }
+    };
+
+    /** {@link BucketQueue} whose buckets have the given width; only for {@link planner.DijkstraPlanner}. */
+    public static IntPriorityQueue.Factory bucket(final double width) {
+        return new BucketFactory(width);
+    }
+    private static class BucketFactory implements IntPriorityQueue.Factory {
+        private final double width;
+
+        BucketFactory(double width) {
+            this.width = width;
+        }
+        public IntPriorityQueue create(int capacity) {
+            return new BucketQueue(capacity, width);
+        }
+    }
+
+    public static final String NAMES = "heap, binary, pairing, radix, bucket[:width]";
+    /** Names of the queues which order by the whole priority, and so can be used by every planner. */
+    public static final String EXACT_NAMES = "heap, binary, pairing";
+
+    /** Whether queues created by {@code factory} order values by both parts of their priority and then by
+        value, and allow any priority to be pushed. Factories not listed here are assumed to. */
+    public static boolean isExact(IntPriorityQueue.Factory factory) {
+        return factory != RADIX && !(factory instanceof BucketFactory);
+    }
+
+    /** Return {@code factory}, or throw IllegalArgumentException if it isn't {@linkplain #isExact exact}.
+        @param user Name of the class which needs the queue, for the error message. */
+    public static IntPriorityQueue.Factory requireExact(IntPriorityQueue.Factory factory, String user) {
+        if(!isExact(factory))
+            throw new IllegalArgumentException(user + " needs a queue which orders by the whole priority; "
+                + "radix and bucket queues only suit DijkstraPlanner. Use one of " + EXACT_NAMES);
+        return factory;
+    }
+
+    /** Get a factory by name, and if {@code exact} is true, reject the queues which aren't
+        {@linkplain #isExact exact}. */
+    public static IntPriorityQueue.Factory getFactory(String name, boolean exact) {
+        IntPriorityQueue.Factory factory = getFactory(name);
+        if(exact && !isExact(factory))
+            throw new IllegalArgumentException("Queue type " + name + " can only be used with DijkstraPlanner; "
+                + "expected one of " + EXACT_NAMES);
+        return factory;
+    }
+
+    /** Get a factory by name. Names are listed in {@link #NAMES}; the default bucket width is 1. */
+    public static IntPriorityQueue.Factory getFactory(String name) {
+        if(name.equals("heap"))
+            return HEAP;
+        else if(name.equals("binary"))
+            return BINARY;
+        else if(name.equals("pairing"))
+            return PAIRING;
+        else if(name.equals("radix"))
+            return RADIX;
+        else if(name.equals("bucket"))
+            return bucket(1);
+        else if(name.startsWith("bucket:"))
+            return bucket(Double.parseDouble(name.substring("bucket:".length())));
+        else
+            throw new IllegalArgumentException("Invalid queue type " + name + "; expected one of " + NAMES);
+    }
+}
@@ -0,0 +1,179 @@
+package util;
+
+import java.util.*;
+
+/** An indexed radix heap of {@code int} values with non-negative {@code double} priorities.
+
+    The bit patterns of non-negative doubles are ordered like the doubles themselves, so
+    priorities are bucketed by the highest bit in which they differ from the last minimum found.
+    When priorities are popped in non-decreasing order (as in Dijkstra's algorithm),
+    each value moves to a lower bucket at most 64 times, and pops cost O(1) amortized.
+
+    Pushing a priority below the last minimum is allowed, but it redistributes the whole heap.
+    The least priority is always popped first; ties are broken arbitrarily rather than by value,
+    and {@link IndexedHeap#EPS} is not used. Heuristic searches do both often, so their planners
+    {@linkplain QueueUtil#requireExact reject} this queue.
+*/
+public class RadixHeap implements IntPriorityQueue {
+    private static final int BUCKETS = 64;
+
+    /** Bit pattern of each value's priority. */
+    private long[] bits;
+    private double[] keys;
+    /** Bucket of each value, or -1 if the value is not in the heap. */
+    private int[] bucketOf;
+    /** Index of each value within its bucket. */
+    private int[] slot;
+    private int[][] buckets = new int[BUCKETS][];
+    private int[] bucketSize = new int[BUCKETS];
+    /** Bit pattern of the last minimum found. Every priority in the heap is at least this. */
+    private long last;
+    private int size;
+    /** Scratch space for {@link #redistribute}. */
+    private int[] scratch = new int[16];
+
+    public RadixHeap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        bits = new long[capacity];
+        keys = new double[capacity];
+        bucketOf = new int[capacity];
+        slot = new int[capacity];
+        Arrays.fill(bucketOf, -1);
+        for(int b=0; b < BUCKETS; ++b)
+            buckets[b] = new int[4];
+    }
+
+    private void ensureValue(int value) {
+        if(value >= bucketOf.length) {
+            int old = bucketOf.length;
+            int cap = Math.max(value + 1, 2 * old);
+            bits = Arrays.copyOf(bits, cap);
+            keys = Arrays.copyOf(keys, cap);
+            slot = Arrays.copyOf(slot, cap);
+            bucketOf = Arrays.copyOf(bucketOf, cap);
+            Arrays.fill(bucketOf, old, cap, -1);
+        }
+    }
+
+    private int bucketFor(long b) {
+        return b == last ? 0 : BUCKETS - Long.numberOfLeadingZeros(b ^ last);
+    }
+
+    private void add(int value) {
+        int b = bucketFor(bits[value]);
+        if(bucketSize[b] == buckets[b].length)
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * bucketSize[b]);
+        slot[value] = bucketSize[b];
+        buckets[b][bucketSize[b]++] = value;
+        bucketOf[value] = b;
+    }
+
+    private void unlink(int value) {
+        int b = bucketOf[value];
+        int k = slot[value];
+        int moved = buckets[b][--bucketSize[b]];
+        buckets[b][k] = moved;
+        slot[moved] = k;
+        bucketOf[value] = -1;
+    }
+
+    /** Move every value in buckets [{@code fromBucket}, {@code toBucket}] into the bucket
+        it belongs to for the current {@link #last}. */
+    private void redistribute(int fromBucket, int toBucket) {
+        int n = 0;
+        for(int b = fromBucket; b <= toBucket; ++b) {
+            if(n + bucketSize[b] > scratch.length)
+                scratch = Arrays.copyOf(scratch, Math.max(2 * scratch.length, n + bucketSize[b]));
+            System.arraycopy(buckets[b], 0, scratch, n, bucketSize[b]);
+            n += bucketSize[b];
+            bucketSize[b] = 0;
+        }
+        for(int k=0; k < n; ++k)
+            add(scratch[k]);
+    }
+
+    public void push(int value, double priority) {
+        if(!(priority >= 0))
+            throw new IllegalArgumentException("RadixHeap needs non-negative priorities, got " + priority);
+        ensureValue(value);
+        if(bucketOf[value] >= 0)
+            unlink(value);
+        else
+            size++;
+        // adding 0.0 turns -0.0 into 0.0
+        long b = Double.doubleToLongBits(priority + 0.0);
+        bits[value] = b;
+        keys[value] = priority;
+        if(b < last) {
+            last = b;
+            redistribute(0, BUCKETS - 1);
+        }
+        add(value);
+    }
+
+    /** Same as {@link #push(int, double)}; the second part of the priority is ignored. */
+    public void push(int value, double priority, double tieBreak) {
+        push(value, priority);
+    }
+
+    public boolean remove(int value) {
+        if(!contains(value))
+            return false;
+        unlink(value);
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return value >= 0 && value < bucketOf.length && bucketOf[value] >= 0;
+    }
+
+    /** Make bucket 0 non-empty by advancing {@link #last} to the least priority. */
+    private void settle() {
+        if(size == 0)
+            throw new NoSuchElementException();
+        if(bucketSize[0] > 0)
+            return;
+        int b = 1;
+        while(bucketSize[b] == 0)
+            ++b;
+        long min = Long.MAX_VALUE;
+        for(int k=0; k < bucketSize[b]; ++k)
+            min = Math.min(min, bits[buckets[b][k]]);
+        last = min;
+        redistribute(b, b);
+    }
+
+    public int top() {
+        settle();
+        return buckets[0][bucketSize[0] - 1];
+    }
+
+    public double topPriority() {
+        return keys[top()];
+    }
+
+    public int pop() {
+        int value = top();
+        remove(value);
+        return value;
+    }
+
+    public void clear() {
+        for(int b=0; b < BUCKETS; ++b) {
+            for(int k=0; k < bucketSize[b]; ++k)
+                bucketOf[buckets[b][k]] = -1;
+            bucketSize[b] = 0;
+        }
+        last = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}